@@ -0,0 +1,110 @@
+package psyknz.libgdx.architecture;
+
+import java.util.Random;
+
+import com.badlogic.gdx.math.Rectangle;
+
+/** Microbenchmark of {@link CollisionSystem#update(float)}. Fills the default group with 16x16 bodies spread over a square world
+ * sized so every body has the same amount of room whatever the count, then moves each body a little before every update, and
+ * reports the average time per update for each broadphase. Each measurement is repeated and the fastest run reported, since slower
+ * runs mostly measure whatever else the machine was doing. Only uses API which has existed since the broadphases were added, so
+ * the same class can be run against older revisions to compare them. Run it with "gradle :core:benchmark", optionally passing
+ * the body counts to measure, such as -Pcounts=1000,5000,20000.
+ * @author Alex Crowther */
+public class CollisionBenchmark {
+	
+	public static final int[] DEFAULT_COUNTS = {1000, 5000, 20000};	// Numbers of bodies measured when none are given.
+	public static final float BODY_SIZE = 16;						// Width and height of every body.
+	public static final float AREA_PER_BODY = 32 * 32;				// Area of the world given to each body.
+	public static final long TARGET_NANOS = 2000000000L;			// Time each measurement runs for, after warming up.
+	public static final int RUNS = 3;								// Number of times each measurement is repeated.
+	
+	private static final String[] NAMES = {"brute force", "spatial hash", "sweep & prune"}; // Indexed by broadphase.
+	
+	private static int collisions; // Number of collisions reported, kept so the callbacks can't be optimised away.
+	
+	public static void main(String[] args) {
+		int[] counts = DEFAULT_COUNTS;
+		if(args.length > 0) {
+			counts = new int[args.length];
+			for(int i = 0; i < args.length; i++) counts[i] = Integer.parseInt(args[i]);
+		}
+		
+		System.out.println("Average ms per update, " + (int) BODY_SIZE + "x" + (int) BODY_SIZE + " bodies jittering each frame, fastest of "
+				+ RUNS + " runs");
+		for(int broadphase = CollisionSystem.BRUTE_FORCE; broadphase <= CollisionSystem.SWEEP_AND_PRUNE; broadphase++) {
+			StringBuilder line = new StringBuilder();
+			line.append(NAMES[broadphase]);
+			for(int i = 0; i < counts.length; i++) {
+				line.append("   ").append(counts[i]).append(": ");
+				double fastest = Double.MAX_VALUE;
+				for(int run = 0; run < RUNS; run++) fastest = Math.min(fastest, measure(broadphase, counts[i]));
+				line.append(String.format("%.2f", fastest));
+			}
+			System.out.println(line);
+		}
+		System.out.println("(" + collisions + " collisions reported)");
+	}
+	
+	/** Measures the average time taken by a single update.
+	 * @param broadphase The broadphase to measure.
+	 * @param count The number of bodies in the world.
+	 * @return The average time per update in milliseconds. */
+	public static double measure(int broadphase, int count) {
+		Random random = new Random(count); // Every broadphase is measured against the same world.
+		float worldSize = (float) Math.sqrt(count * AREA_PER_BODY);
+		CollisionSystem system = new CollisionSystem(true, broadphase);
+		Body[] bodies = new Body[count];
+		for(int i = 0; i < count; i++) {
+			bodies[i] = new Body(random.nextFloat() * worldSize, random.nextFloat() * worldSize);
+			system.colliders.get(CollisionSystem.DEFAULT_GROUP).add(bodies[i]);
+		}
+		
+		// Warms up until the JIT has compiled the update, then runs for roughly the target time.
+		long warmup = System.nanoTime();
+		int frames = 0;
+		while(frames < 5 || System.nanoTime() - warmup < TARGET_NANOS / 4) {
+			jitter(bodies, random);
+			system.update(1 / 60f);
+			frames++;
+		}
+		long time = 0;
+		frames = 0;
+		while(frames < 3 || time < TARGET_NANOS) {
+			jitter(bodies, random);
+			long start = System.nanoTime(); // Only the update itself is timed.
+			system.update(1 / 60f);
+			time += System.nanoTime() - start;
+			frames++;
+		}
+		return time / 1000000.0 / frames;
+	}
+	
+	// Moves every body up to a unit along each axis, as if the world were being simulated between updates.
+	private static void jitter(Body[] bodies, Random random) {
+		for(int i = 0; i < bodies.length; i++) {
+			bodies[i].bounds.x += random.nextFloat() * 2 - 1;
+			bodies[i].bounds.y += random.nextFloat() * 2 - 1;
+		}
+	}
+	
+	// Collider doing nothing but counting its collisions.
+	private static class Body implements Collidable {
+		
+		final Rectangle bounds;
+		
+		Body(float x, float y) {
+			bounds = new Rectangle(x, y, BODY_SIZE, BODY_SIZE);
+		}
+		
+		@Override
+		public Rectangle getBounds() {
+			return bounds;
+		}
+		
+		@Override
+		public void collision(Collidable collider) {
+			collisions++;
+		}
+	}
+}
@@ -0,0 +1,20 @@
+package com.badlogic.gdx.graphics.g2d.freetype;
+
+import com.badlogic.gdx.graphics.g2d.BitmapFont.Glyph;
+import com.badlogic.gdx.graphics.g2d.freetype.FreeTypeFontGenerator.FreeTypeBitmapFontData;
+import com.badlogic.gdx.utils.Array;
+
+/** Exposes package private state of {@link FreeTypeBitmapFontData} needed by psyknz.libgdx.architecture.IncrementalFontData. An
+ * incrementally generated font appends every glyph it rasterises to an array which is used to kern new glyphs against, and which
+ * nothing outside this package can reach, so it has to be trimmed from here when the font's glyphs are evicted.
+ * @author Alex Crowther */
+public final class FreeTypeFontDataAccess {
+	
+	private FreeTypeFontDataAccess() {}
+	
+	/** @param data The font data.
+	 * @return Every glyph rasterised since the font was generated, or null if the font was not generated incrementally. */
+	public static Array<Glyph> getGlyphs(FreeTypeBitmapFontData data) {
+		return data.glyphs;
+	}
+}
@@ -0,0 +1,71 @@
+package psyknz.libgdx.architecture;
+
+import com.badlogic.gdx.math.MathUtils;
+
+/** GWT version of the fixed size ring buffer {@link GameEvent} objects can be offered to from other threads. Browsers run the game on
+ * a single thread, so the queue is a plain array with no atomics, which GWT cannot compile. It behaves exactly like the desktop
+ * version otherwise, dropping and counting events offered while it is full.
+ * @author Alex Crowther */
+public class ConcurrentEventQueue {
+	
+	private final GameEvent[] slots;	// Event waiting in each slot, or null once the slot has been polled.
+	private final int mask;				// Capacity minus one, used to wrap positions onto slots.
+	private long tail;					// Position the next event offered will be stored at.
+	private long head;					// Position the next event will be polled from.
+	private long dropped;				// Number of events dropped because the buffer was full.
+	private int maxDepth;				// Most events waiting at once when polled.
+	
+	/** Creates a new empty ConcurrentEventQueue.
+	 * @param capacity The number of events which can wait at once, rounded up to a power of two. */
+	public ConcurrentEventQueue(int capacity) {
+		if(capacity < 1) throw new IllegalArgumentException("Capacity must be at least one: " + capacity);
+		capacity = MathUtils.nextPowerOfTwo(capacity);
+		slots = new GameEvent[capacity];
+		mask = capacity - 1;
+	}
+	
+	/** Adds an event to the back of the queue.
+	 * @param event The event to add.
+	 * @return True if the event was added, or false if the queue was full and the event was dropped. */
+	public boolean offer(GameEvent event) {
+		if(tail - head > mask) {
+			dropped++;
+			return false;
+		}
+		slots[(int) tail++ & mask] = event;
+		return true;
+	}
+	
+	/** Removes the event at the front of the queue.
+	 * @return The event at the front of the queue, or null if the queue is empty. */
+	public GameEvent poll() {
+		int slot = (int) head & mask;
+		GameEvent event = slots[slot];
+		if(event == null) return null;
+		int depth = (int) (tail - head);
+		if(depth > maxDepth) maxDepth = depth;
+		slots[slot] = null;
+		head++;
+		return event;
+	}
+	
+	/** @return The number of events waiting. */
+	public int getDepth() {
+		return (int) (tail - head);
+	}
+	
+	/** @return The most events which have been waiting at once when the consumer polled. */
+	public int getMaxDepth() {
+		return maxDepth;
+	}
+	
+	/** @return The number of events dropped because the queue was full. */
+	public long getDropped() {
+		return dropped;
+	}
+	
+	/** @return The number of events which can wait at once. */
+	public int getCapacity() {
+		return mask + 1;
+	}
+}
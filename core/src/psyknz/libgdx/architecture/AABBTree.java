@@ -0,0 +1,167 @@
+package psyknz.libgdx.architecture;
+
+import java.util.Arrays;
+
+import com.badlogic.gdx.utils.IntArray;
+
+/** Immutable bounding volume tree used by the {@link CollisionSystem} to index colliders which never move. The tree is packed into
+ * flat arrays using the sort-tile-recursive method, with up to {@link #NODE_SIZE} children per node, so it is cheap to search and
+ * costs nothing to maintain between rebuilds. Searches only read the tree and hold no state, so it may be searched from several
+ * threads at once.
+ * @author Alex Crowther */
+public class AABBTree {
+	
+	public static final int NODE_SIZE = 16; // Maximum number of children held by each node in the tree.
+	
+	private int count;						// Number of boxes indexed by the tree.
+	private int numNodes;					// Number of entries in the tree, counting each box as a leaf.
+	private float[] minX, minY, maxX, maxY;	// Bounds of every entry in the tree. Leaves come first and the root is last.
+	private int[] index;					// Box index of each leaf, or the position of the first child of each node.
+	private int[] levelEnds;				// Position after the last entry of each level, starting from the leaves.
+	private int numLevels;					// Number of levels in the tree including the leaves.
+	private long[] sortKeys;				// Scratch space used to sort the boxes while building.
+	
+	/** Creates a new empty AABBTree. */
+	public AABBTree() {
+		ensureCapacity(NODE_SIZE);
+		levelEnds = new int[8];
+	}
+	
+	/** Packs the given bounding boxes into the tree, replacing its previous contents.
+	 * @param boxMinX Left edge of each box.
+	 * @param boxMinY Bottom edge of each box.
+	 * @param boxMaxX Right edge of each box.
+	 * @param boxMaxY Top edge of each box.
+	 * @param count Number of boxes to index. Results from searches are indices into the given arrays. */
+	public void build(float[] boxMinX, float[] boxMinY, float[] boxMaxX, float[] boxMaxY, int count) {
+		this.count = count;
+		numLevels = 0;
+		numNodes = 0;
+		if(count == 0) return;
+		
+		// Works out how many entries each level holds so the arrays can be sized once.
+		int total = 0;
+		for(int n = count; ; n = (n + NODE_SIZE - 1) / NODE_SIZE) {
+			total += n;
+			if(numLevels == levelEnds.length) levelEnds = Arrays.copyOf(levelEnds, numLevels * 2);
+			levelEnds[numLevels++] = total;
+			if(n == 1) break;
+		}
+		ensureCapacity(total);
+		
+		// Sorts the boxes into vertical slices by their centre on the x-axis, then each slice by its centre on the y-axis.
+		for(int i = 0; i < count; i++) sortKeys[i] = key(boxMinX[i] + boxMaxX[i], i);
+		Arrays.sort(sortKeys, 0, count);
+		int numLeaves = (count + NODE_SIZE - 1) / NODE_SIZE;
+		int sliceSize = (int) Math.ceil(Math.sqrt(numLeaves)) * NODE_SIZE;
+		for(int s = 0; s < count; s += sliceSize) {
+			int end = Math.min(s + sliceSize, count);
+			for(int k = s; k < end; k++) {
+				int i = (int) sortKeys[k];
+				sortKeys[k] = key(boxMinY[i] + boxMaxY[i], i);
+			}
+			Arrays.sort(sortKeys, s, end);
+		}
+		for(int k = 0; k < count; k++) {
+			int i = (int) sortKeys[k];
+			minX[k] = boxMinX[i];
+			minY[k] = boxMinY[i];
+			maxX[k] = boxMaxX[i];
+			maxY[k] = boxMaxY[i];
+			index[k] = i;
+		}
+		numNodes = count;
+		
+		// Each run of consecutive entries on a level is wrapped by a node on the level above.
+		int levelStart = 0;
+		for(int l = 0; l < numLevels - 1; l++) {
+			for(int child = levelStart; child < levelEnds[l]; child += NODE_SIZE) {
+				int end = Math.min(child + NODE_SIZE, levelEnds[l]);
+				float x0 = Float.POSITIVE_INFINITY, y0 = Float.POSITIVE_INFINITY;
+				float x1 = Float.NEGATIVE_INFINITY, y1 = Float.NEGATIVE_INFINITY;
+				for(int c = child; c < end; c++) {
+					x0 = Math.min(x0, minX[c]);
+					y0 = Math.min(y0, minY[c]);
+					x1 = Math.max(x1, maxX[c]);
+					y1 = Math.max(y1, maxY[c]);
+				}
+				minX[numNodes] = x0;
+				minY[numNodes] = y0;
+				maxX[numNodes] = x1;
+				maxY[numNodes] = y1;
+				index[numNodes++] = child;
+			}
+			levelStart = levelEnds[l];
+		}
+	}
+	
+	/** Finds every box in the tree which overlaps a collider in part of a group.
+	 * @param group The group whose cached bounding boxes are tested against the tree.
+	 * @param start Index of the first collider in the group to search from.
+	 * @param end Index after the last collider in the group to search from.
+	 * @param swap Whether pairs are reported with the tree's index first rather than the group's index first.
+	 * @param pairs Array the indices of each overlapping pair are appended to. */
+	public void findPairs(CollisionGroup group, int start, int end, boolean swap, IntArray pairs) {
+		if(count == 0) return;
+		for(int i = start; i < end; i++) {
+			search(numNodes - 1, numLevels - 1, group.minX[i], group.minY[i], group.maxX[i], group.maxY[i], i, swap, pairs);
+		}
+	}
+	
+	/** Finds every box in the tree which touches an area, including boxes which only share an edge with it.
+	 * @param x0 Left edge of the area.
+	 * @param y0 Bottom edge of the area.
+	 * @param x1 Right edge of the area.
+	 * @param y1 Top edge of the area.
+	 * @param results Array the index of each box found is appended to. */
+	public void query(float x0, float y0, float x1, float y1, IntArray results) {
+		if(count > 0) collect(numNodes - 1, numLevels - 1, x0, y0, x1, y1, results);
+	}
+	
+	/** @return The number of boxes indexed by the tree. */
+	public int size() {
+		return count;
+	}
+	
+	// Recursively searches the children of a node for boxes overlapping the given area.
+	private void search(int node, int level, float x0, float y0, float x1, float y1, int i, boolean swap, IntArray pairs) {
+		if(x0 >= maxX[node] || x1 <= minX[node] || y0 >= maxY[node] || y1 <= minY[node]) return;
+		if(level == 0) {
+			if(swap) pairs.add(index[node], i);
+			else pairs.add(i, index[node]);
+			return;
+		}
+		int end = Math.min(index[node] + NODE_SIZE, levelEnds[level - 1]);
+		for(int c = index[node]; c < end; c++) search(c, level - 1, x0, y0, x1, y1, i, swap, pairs);
+	}
+	
+	// Recursively collects the boxes beneath a node which touch the given area.
+	private void collect(int node, int level, float x0, float y0, float x1, float y1, IntArray results) {
+		if(x0 > maxX[node] || x1 < minX[node] || y0 > maxY[node] || y1 < minY[node]) return;
+		if(level == 0) {
+			results.add(index[node]);
+			return;
+		}
+		int end = Math.min(index[node] + NODE_SIZE, levelEnds[level - 1]);
+		for(int c = index[node]; c < end; c++) collect(c, level - 1, x0, y0, x1, y1, results);
+	}
+	
+	// Packs a float sort key and an index into a long which sorts in the same order as the key.
+	private static long key(float value, int i) {
+		int bits = Float.floatToIntBits(value);
+		bits ^= (bits >> 31) & 0x7FFFFFFF;	// Negative floats have their magnitude bits flipped so they sort as signed ints.
+		return ((long) bits << 32) | i;
+	}
+	
+	// Grows the buffers so they can hold the given number of entries.
+	private void ensureCapacity(int capacity) {
+		if(minX != null && minX.length >= capacity) return;
+		int size = Math.max(capacity, minX == null ? 0 : minX.length * 2);
+		minX = new float[size];
+		minY = new float[size];
+		maxX = new float[size];
+		maxY = new float[size];
+		index = new int[size];
+		sortKeys = new long[size];
+	}
+}
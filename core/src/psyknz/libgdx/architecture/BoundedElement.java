@@ -0,0 +1,13 @@
+package psyknz.libgdx.architecture;
+
+import com.badlogic.gdx.math.Rectangle;
+
+/** A {@link GameElement} which occupies a known area of the game, so the {@link ElementRegistry} holding it can skip drawing it
+ * whenever that area is out of view.
+ * @author Alex Crowther */
+public interface BoundedElement extends GameElement {
+	
+	/** @return {@link Rectangle} containing everything the element draws. */
+	public Rectangle getBounds();
+	
+}
@@ -0,0 +1,197 @@
+package psyknz.libgdx.architecture;
+
+import com.badlogic.gdx.math.Rectangle;
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.utils.Array;
+
+/** Handle to a group of {@link Collidable} objects managed by a {@link CollisionSystem}. Once per update the group copies the
+ * bounding box of every member into flat float arrays, so the collision loops can test pairs without any map lookups, calls to
+ * {@link Collidable#getBounds()} or allocation. Everything else about a member, such as which optional interfaces it implements,
+ * is only worked out when it first appears at its index, so a refresh costs little more than reading each bounding box. Static groups instead copy their members only when invalidated, and index them in
+ * an {@link AABBTree} which is never rebuilt otherwise. When layers are in use the members of every dynamic group are merged into
+ * the {@link CollisionSystem#LAYER_GROUP}, so they can all be searched in a single pass.
+ * @author Alex Crowther */
+public class CollisionGroup {
+	
+	static final int CONTACT = 1;	// Flag marking members which implement ContactCollidable.
+	static final int SWEPT = 2;		// Flag marking members which implement SweptCollidable.
+	static final int LAYERED = 4;	// Flag marking members which implement LayeredCollidable.
+	
+	public final String id;						// The id the group was created with.
+	public final Array<Collidable> colliders;	// The members of the group. Shared with the CollisionSystem's colliders map.
+	public final boolean isStatic;				// Whether the members of the group never move.
+	
+	final Array<CollisionGroup> sources;	// Groups whose members are merged into this group. Null unless this is the LAYER_GROUP.
+	int category, mask;						// Layer bits given to members which do not implement LayeredCollidable.
+	
+	int size;								// Number of members when the group was last refreshed.
+	Collidable[] bodies;					// Members of the group when it was last refreshed, in the same order as colliders.
+	float[] minX, minY, maxX, maxY;			// Edges of every member's bounding box when the group was last refreshed. For swept
+											// members this is the box covering both their previous and current positions.
+	float[] moveX, moveY;					// Distance each swept member moved this update. Zero for all other members.
+	int numSwept;							// Number of swept members when the group was last refreshed.
+	int[] hashes;							// Identity hash code of every member, used to track contacts.
+	int[] flags;							// Flags describing the optional interfaces each member implements.
+	int[] categories, masks;				// Layer bits of every member when the group was last refreshed.
+	
+	final SweepAndPrune sweepList;			// Sorted list used by the SWEEP_AND_PRUNE broadphase.
+	AABBTree tree;							// Index of the members of a static group. Created the first time it is needed.
+	boolean invalid = true;					// Whether a static group needs to be refreshed and its tree rebuilt.
+	SpatialHash hash;						// Grid used by the SPATIAL_HASH broadphase. Created the first time it is needed.
+	private int hashedFrame = -1;			// The update the hash was last built in.
+	
+	CollisionGroup(String id, Array<Collidable> colliders, boolean isStatic) {
+		this(id, colliders, isStatic, null);
+	}
+	
+	/** Creates a group which merges the members of other groups, in the order the groups are given. */
+	CollisionGroup(String id, Array<CollisionGroup> sources) {
+		this(id, null, false, sources);
+	}
+	
+	private CollisionGroup(String id, Array<Collidable> colliders, boolean isStatic, Array<CollisionGroup> sources) {
+		this.id = id;
+		this.colliders = colliders;
+		this.isStatic = isStatic;
+		this.sources = sources;
+		category = mask = CollisionSystem.ALL_LAYERS;
+		bodies = new Collidable[16];
+		minX = new float[16];
+		minY = new float[16];
+		maxX = new float[16];
+		maxY = new float[16];
+		moveX = new float[16];
+		moveY = new float[16];
+		hashes = new int[16];
+		flags = new int[16];
+		categories = new int[16];
+		masks = new int[16];
+		sweepList = new SweepAndPrune(this);
+	}
+	
+	/** Copies the current members of the group and their bounding boxes into the group's buffers. */
+	void refresh() {
+		if(sources == null) size = colliders.size;
+		else {
+			size = 0;
+			for(int s = 0; s < sources.size; s++) size += sources.get(s).colliders.size;
+		}
+		if(bodies.length < size) {
+			int capacity = Math.max(size, bodies.length * 2);
+			bodies = new Collidable[capacity];
+			minX = new float[capacity];
+			minY = new float[capacity];
+			maxX = new float[capacity];
+			maxY = new float[capacity];
+			moveX = new float[capacity];
+			moveY = new float[capacity];
+			hashes = new int[capacity];
+			flags = new int[capacity];
+			categories = new int[capacity];
+			masks = new int[capacity];
+		}
+		
+		numSwept = 0;
+		if(sources == null) copy(this, 0);
+		else {
+			int offset = 0;
+			for(int s = 0; s < sources.size; s++) {
+				copy(sources.get(s), offset);
+				offset += sources.get(s).colliders.size;
+			}
+		}
+		for(int i = size; i < bodies.length && bodies[i] != null; i++) bodies[i] = null; // Stops removed members being held onto.
+	}
+	
+	// Copies the members of a group into this group's buffers starting from the given index.
+	private void copy(CollisionGroup source, int offset) {
+		Object[] members = source.colliders.items; // Untyped, since the group's array was created without a component type.
+		for(int k = 0, n = source.colliders.size; k < n; k++) {
+			int i = offset + k;
+			Collidable body = (Collidable) members[k];
+			if(bodies[i] != body) identify(body, i); // Interface checks are slow when they fail, so are only made for new members.
+			Rectangle r = body.getBounds();
+			minX[i] = r.x;
+			minY[i] = r.y;
+			maxX[i] = r.x + r.width;
+			maxY[i] = r.y + r.height;
+			
+			int flag = flags[i];
+			if((flag & SWEPT) != 0) {
+				Vector2 previous = ((SweptCollidable) body).getPreviousPosition();
+				moveX[i] = r.x - previous.x;
+				moveY[i] = r.y - previous.y;
+				minX[i] = Math.min(r.x, previous.x);	// The cached box is grown to cover the entire path of the collider,
+				minY[i] = Math.min(r.y, previous.y);	// so the broadphase finds everything it might have passed through.
+				maxX[i] = Math.max(r.x, previous.x) + r.width;
+				maxY[i] = Math.max(r.y, previous.y) + r.height;
+				numSwept++;
+			}
+			
+			if((flag & LAYERED) != 0) {
+				categories[i] = ((LayeredCollidable) body).getCategoryBits();
+				masks[i] = ((LayeredCollidable) body).getMaskBits();
+			}
+			else {
+				categories[i] = source.category;
+				masks[i] = source.mask;
+			}
+		}
+	}
+	
+	// Stores everything about a member which does not change while it stays at the same index.
+	private void identify(Collidable body, int i) {
+		bodies[i] = body;
+		hashes[i] = System.identityHashCode(body);
+		flags[i] = (body instanceof ContactCollidable ? CONTACT : 0) | (body instanceof SweptCollidable ? SWEPT : 0)
+				| (body instanceof LayeredCollidable ? LAYERED : 0);
+		moveX[i] = 0; // Only swept members move.
+		moveY[i] = 0;
+	}
+	
+	/** Refreshes a static group and rebuilds its tree if it has been invalidated or its members have changed. Members are compared
+	 * by reference against the last refresh, which is far cheaper than reading their bounding boxes, so swapping one member for
+	 * another without changing the number of members is still caught. */
+	void refreshStatic() {
+		if(!invalid && !membersChanged()) return;
+		refresh();
+		if(tree == null) tree = new AABBTree();
+		tree.build(minX, minY, maxX, maxY, size);
+		invalid = false;
+	}
+	
+	// Whether the group's members differ from those it had when it was last refreshed.
+	private boolean membersChanged() {
+		if(size != colliders.size) return true;
+		Object[] members = colliders.items; // Untyped, since the group's array was created without a component type.
+		for(int i = 0; i < size; i++) if(bodies[i] != members[i]) return true;
+		return false;
+	}
+	
+	/** Buckets the group's cached bounding boxes into its spatial hash, unless this has already been done in the current update.
+	 * @param cellSize Width and height of the hash's cells.
+	 * @param frame Number identifying the current update. */
+	void buildHash(float cellSize, int frame) {
+		if(hashedFrame == frame) return;
+		if(hash == null) hash = new SpatialHash(cellSize);
+		else hash.setCellSize(cellSize);
+		hash.build(this);
+		hashedFrame = frame;
+	}
+	
+	/** @return The number of members the group had when it was last refreshed. When layers are in use, dynamic groups are refreshed
+	 * as part of the {@link CollisionSystem#LAYER_GROUP} and always report zero. */
+	public int size() {
+		return size;
+	}
+	
+	/** @return Bits identifying the layers members of this group belong to. */
+	public int getCategoryBits() {
+		return category;
+	}
+	
+	/** @return Bits identifying the layers members of this group collide with. */
+	public int getMaskBits() {
+		return mask;
+	}
+}
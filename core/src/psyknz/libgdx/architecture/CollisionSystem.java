@@ -1,71 +1,659 @@
 package psyknz.libgdx.architecture;
 
+import com.badlogic.gdx.math.Rectangle;
 import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.FloatArray;
+import com.badlogic.gdx.utils.IntArray;
 import com.badlogic.gdx.utils.ObjectMap;
 
 public class CollisionSystem {
 	
 	public static final String DEFAULT_GROUP = "ALL";
+	public static final String LAYER_GROUP = "LAYERS";	// Id of the group every dynamic collider is merged into when using layers.
+	
+	public static final int ALL_LAYERS = -1;	// Category or mask bits covering every layer.
+	public static final int MAX_LAYERS = 32;	// Number of groups which can be created when using layers.
+	
+	public static final int BRUTE_FORCE = 0;	// Every collider in a rule is tested against every other collider in the rule.
+	public static final int SPATIAL_HASH = 1;	// Colliders are bucketed into a uniform grid and only tested against nearby colliders.
+	public static final int SWEEP_AND_PRUNE = 2;	// Colliders are kept sorted along the x-axis between frames and swept for overlaps.
+	
+	public static final float DEFAULT_CELL_SIZE = 64;	// Default width and height of the cells used by the SPATIAL_HASH broadphase.
 	
 	public final ObjectMap<String, Array<Collidable>> colliders;
 	
 	public final Array<CollisionRule> rules;
 	
+	private final Array<CollisionGroup> groups;					// Handles to every group, refreshed once at the start of each update.
+	private final ObjectMap<String, CollisionGroup> groupHandles;	// Handles to every group by id, used to resolve new rules.
+	
+	private int broadphase;		// The broadphase used to find candidate pairs of colliders each update.
+	private float cellSize;		// Width and height of the cells used by the SPATIAL_HASH broadphase.
+	private int frame;			// Number of updates performed, used to build each group's spatial hash once per update.
+	
+	private final boolean useLayers;	// Whether pairs are filtered by layer bits rather than searched rule by rule.
+	private int numLayers;				// Number of category bits given to groups so far.
+	
+	private final ContactSet contacts;	// Pairs involving a ContactCollidable which touched during the last update.
+	
+	private final Array<PairBatch> batches;	// Batches of overlapping pairs found this update, in the order they are dispatched.
+	private int numBatches;					// Number of batches in use this update. Batches past this are kept for reuse.
+	private int numPairs;					// Number of colliding pairs dispatched during the last update.
+	
+	private final IntArray queryResults;		// Indices of the members of a group found by a query, reused by every query.
+	private final Array<Collidable> rayHits;	// Colliders hit by a raycast, sorted into order before they are reported.
+	private final FloatArray rayFractions;		// Fraction along the ray each collider in rayHits was hit at.
+	
 	public CollisionSystem() {
 		this(true);
 	}
 	
 	public CollisionSystem(boolean createDefaults) {
+		this(createDefaults, BRUTE_FORCE);
+	}
+	
+	/** Creates a new CollisionSystem using the given broadphase to find colliding pairs.
+	 * @param createDefaults Whether the {@link #DEFAULT_GROUP} and a rule colliding it with itself should be created.
+	 * @param broadphase One of {@link #BRUTE_FORCE}, {@link #SPATIAL_HASH} or {@link #SWEEP_AND_PRUNE}. */
+	public CollisionSystem(boolean createDefaults, int broadphase) {
+		this(createDefaults, broadphase, false);
+	}
+	
+	/** Creates a new CollisionSystem, optionally filtering pairs by layer bits instead of rules. When using layers the members of
+	 * every dynamic group are merged into the {@link #LAYER_GROUP} and searched in a single pass, however many groups and rules
+	 * there are. Each group is given its own category bit when created, and {@link #createCollisionRule(String, String)} adds each
+	 * group's category to the other's mask, so code written against groups and rules behaves the same either way.
+	 * @param createDefaults Whether the {@link #DEFAULT_GROUP} and a rule colliding it with itself should be created.
+	 * @param broadphase One of {@link #BRUTE_FORCE}, {@link #SPATIAL_HASH} or {@link #SWEEP_AND_PRUNE}.
+	 * @param useLayers Whether pairs are filtered by layer bits rather than searched rule by rule. */
+	public CollisionSystem(boolean createDefaults, int broadphase, boolean useLayers) {
+		this.useLayers = useLayers;
 		colliders = new ObjectMap<String, Array<Collidable>>();
 		rules = new Array<CollisionRule>();
+		groups = new Array<CollisionGroup>();
+		groupHandles = new ObjectMap<String, CollisionGroup>();
+		batches = new Array<PairBatch>();
+		contacts = new ContactSet();
+		queryResults = new IntArray();
+		rayHits = new Array<Collidable>();
+		rayFractions = new FloatArray();
+		setBroadphase(broadphase);
+		setCellSize(DEFAULT_CELL_SIZE);
+		if(useLayers) {
+			CollisionGroup layers = new CollisionGroup(LAYER_GROUP, new Array<CollisionGroup>());
+			groupHandles.put(LAYER_GROUP, layers);
+			groups.add(layers);
+			rules.add(new CollisionRule(LAYER_GROUP, LAYER_GROUP));
+		}
 		if(createDefaults) {
 			createCollisionGroup(CollisionSystem.DEFAULT_GROUP);
 			createCollisionRule(CollisionSystem.DEFAULT_GROUP, CollisionSystem.DEFAULT_GROUP);
 		}
 	}
 	
+	/** Finds every pair of overlapping colliders covered by a rule and notifies both colliders of the collision. The bounding box of
+	 * every collider is read once at the start of the update, and the pair loops work purely from those cached values. Pairs
+	 * involving a {@link ContactCollidable} are also tracked between updates so it can be told when each contact begins and ends.
+	 * A {@link SweptCollidable} collides with anything its bounding box passed through since its previous position.
+	 * @param delta The time in seconds since the last update. */
 	public void update(float delta) {
-		for(int r = 0; r < rules.size; r++) {
-			if(rules.get(r).groupA == rules.get(r).groupB) {
-				for(int i = 0; i < colliders.get(rules.get(r).groupA).size; i++) {
-					for(int j = i + 1; j < colliders.get(rules.get(r).groupA).size; j++) {
-						if(colliders.get(rules.get(r).groupA).get(i).getBounds().overlaps(colliders.get(rules.get(r).groupA).get(j).getBounds())) {
-							colliders.get(rules.get(r).groupA).get(i).collision(colliders.get(rules.get(r).groupA).get(j));
-							colliders.get(rules.get(r).groupA).get(j).collision(colliders.get(rules.get(r).groupA).get(i));
-						}
-					}
+		frame++;
+		for(int g = 0; g < groups.size; g++) {
+			CollisionGroup group = groups.get(g);
+			if(group.isStatic) group.refreshStatic(); // Static groups are only refreshed when they have changed.
+			else {
+				group.refresh();
+				if(broadphase == SWEEP_AND_PRUNE) group.sweepList.update(); // Sorted lists are repaired once per update.
+			}
+		}
+		if(broadphase == SPATIAL_HASH) {
+			for(int r = 0; r < rules.size; r++) {
+				CollisionGroup a = rules.get(r).a, b = rules.get(r).b;
+				if(a.isStatic || b.isStatic) continue; // Static groups are searched using their tree instead.
+				if(a == b) a.buildHash(cellSize, frame);
+				b.buildHash(cellSize, frame); // Only groups that are searched by a rule are bucketed.
+			}
+		}
+		
+		numBatches = 0;
+		findPairs();
+			
+		// Collisions are dispatched on the calling thread in the order the batches were added.
+		numPairs = 0;
+		for(int n = 0; n < numBatches; n++) {
+			PairBatch batch = batches.get(n);
+			numPairs += batch.pairs.size / 2;
+			CollisionGroup a = batch.rule.a, b = batch.rule.b;
+			int[] items = batch.pairs.items;
+			for(int p = 0; p < batch.pairs.size; p += 2) {
+				int i = items[p], j = items[p + 1];
+				if(((a.flags[i] | b.flags[j]) & CollisionGroup.CONTACT) != 0 &&
+						contacts.touch(a.bodies[i], a.hashes[i], b.bodies[j], b.hashes[j], frame)) {
+					if(a.bodies[i] instanceof ContactCollidable) ((ContactCollidable) a.bodies[i]).beginContact(b.bodies[j]);
+					if(b.bodies[j] instanceof ContactCollidable) ((ContactCollidable) b.bodies[j]).beginContact(a.bodies[i]);
+				}
+				if(((a.flags[i] | b.flags[j]) & CollisionGroup.SWEPT) != 0) {
+					float time = timeOfImpact(a, i, b, j);
+					if(a.bodies[i] instanceof SweptCollidable) ((SweptCollidable) a.bodies[i]).sweptCollision(b.bodies[j], time);
+					else a.bodies[i].collision(b.bodies[j]);
+					if(b.bodies[j] instanceof SweptCollidable) ((SweptCollidable) b.bodies[j]).sweptCollision(a.bodies[i], time);
+					else b.bodies[j].collision(a.bodies[i]);
+				}
+				else {
+					a.bodies[i].collision(b.bodies[j]);
+					b.bodies[j].collision(a.bodies[i]);
 				}
 			}
-			else {
-				for(int i = 0; i < colliders.get(rules.get(r).groupA).size; i++) {
-					for(int j = 0; j < colliders.get(rules.get(r).groupB).size; j++) {
-						if(colliders.get(rules.get(r).groupA).get(i).getBounds().overlaps(colliders.get(rules.get(r).groupB).get(j).getBounds())) {
-							colliders.get(rules.get(r).groupA).get(i).collision(colliders.get(rules.get(r).groupB).get(j));
-							colliders.get(rules.get(r).groupB).get(j).collision(colliders.get(rules.get(r).groupA).get(i));
-						}
-					}
+		}
+		contacts.endUntouched(frame); // Contacts which were not found this update have ended.
+	}
+	
+	/** @param a One of the colliders in the pair.
+	 * @param b The other collider in the pair.
+	 * @return True if the pair were touching during the last update. Only pairs involving a {@link ContactCollidable} are tracked. */
+	public boolean isTouching(Collidable a, Collidable b) {
+		return contacts.contains(a, b);
+	}
+	
+	/** @return The number of colliding pairs found during the last update. */
+	public int getNumPairs() {
+		return numPairs;
+	}
+	
+	/** @return The number of pairs involving a {@link ContactCollidable} which were touching during the last update. */
+	public int getNumContacts() {
+		return contacts.size();
+	}
+	
+	/** Finds every collider whose bounding box overlaps an area. Queries use the bounding boxes read during the last update, and
+	 * search each group using the index of the current broadphase, so their cost depends on the number of colliders nearby rather
+	 * than the total. A collider belonging to several groups is reported once for each group. Queries must not be started from
+	 * inside a callback.
+	 * @param area The area to search.
+	 * @param callback Notified of every collider found. */
+	public void queryAABB(Rectangle area, QueryCallback callback) {
+		queryAABB(area, ALL_LAYERS, callback);
+	}
+	
+	/** Finds every collider whose bounding box overlaps an area and whose category bits share a bit with the given mask.
+	 * @param area The area to search.
+	 * @param mask Bits identifying the layers to search.
+	 * @param callback Notified of every collider found. */
+	public void queryAABB(Rectangle area, int mask, QueryCallback callback) {
+		float x0 = area.x, y0 = area.y, x1 = area.x + area.width, y1 = area.y + area.height;
+		for(int g = 0; g < groups.size; g++) {
+			CollisionGroup group = groups.get(g);
+			queryGroup(group, x0, y0, x1, y1);
+			int[] items = queryResults.items;
+			for(int k = 0; k < queryResults.size; k++) {
+				int i = items[k];
+				if((group.categories[i] & mask) == 0 || !touches(group, i, x0, y0, x1, y1, true)) continue;
+				if(!callback.reportCollider(group.bodies[i])) return;
+			}
+		}
+	}
+	
+	/** Finds every collider whose bounding box contains a point, such as a touch on the screen projected into the game world.
+	 * @param x Position of the point on the x-axis.
+	 * @param y Position of the point on the y-axis.
+	 * @param callback Notified of every collider found. */
+	public void queryPoint(float x, float y, QueryCallback callback) {
+		queryPoint(x, y, ALL_LAYERS, callback);
+	}
+	
+	/** Finds every collider whose bounding box contains a point and whose category bits share a bit with the given mask.
+	 * @param x Position of the point on the x-axis.
+	 * @param y Position of the point on the y-axis.
+	 * @param mask Bits identifying the layers to search.
+	 * @param callback Notified of every collider found. */
+	public void queryPoint(float x, float y, int mask, QueryCallback callback) {
+		for(int g = 0; g < groups.size; g++) {
+			CollisionGroup group = groups.get(g);
+			queryGroup(group, x, y, x, y);
+			int[] items = queryResults.items;
+			for(int k = 0; k < queryResults.size; k++) {
+				int i = items[k];
+				if((group.categories[i] & mask) == 0 || !touches(group, i, x, y, x, y, false)) continue;
+				if(!callback.reportCollider(group.bodies[i])) return;
+			}
+		}
+	}
+	
+	/** Finds every collider whose bounding box is crossed by a line segment, such as a line of sight or the path of a hitscan
+	 * weapon. Colliders are reported in order of distance from the start of the segment, so the search can be stopped at the first
+	 * collider which blocks it. Costs about the same as querying the area covered by the segment.
+	 * @param x1 Start of the segment on the x-axis.
+	 * @param y1 Start of the segment on the y-axis.
+	 * @param x2 End of the segment on the x-axis.
+	 * @param y2 End of the segment on the y-axis.
+	 * @param callback Notified of every collider crossed by the segment. */
+	public void raycast(float x1, float y1, float x2, float y2, RaycastCallback callback) {
+		raycast(x1, y1, x2, y2, ALL_LAYERS, callback);
+	}
+	
+	/** Finds every collider whose bounding box is crossed by a line segment and whose category bits share a bit with the given mask.
+	 * @param x1 Start of the segment on the x-axis.
+	 * @param y1 Start of the segment on the y-axis.
+	 * @param x2 End of the segment on the x-axis.
+	 * @param y2 End of the segment on the y-axis.
+	 * @param mask Bits identifying the layers to search.
+	 * @param callback Notified of every collider crossed by the segment. */
+	public void raycast(float x1, float y1, float x2, float y2, int mask, RaycastCallback callback) {
+		float dx = x2 - x1, dy = y2 - y1;
+		rayHits.clear();
+		rayFractions.clear();
+		for(int g = 0; g < groups.size; g++) {
+			CollisionGroup group = groups.get(g);
+			queryGroup(group, Math.min(x1, x2), Math.min(y1, y2), Math.max(x1, x2), Math.max(y1, y2));
+			int[] items = queryResults.items;
+			for(int k = 0; k < queryResults.size; k++) {
+				int i = items[k];
+				if((group.categories[i] & mask) == 0) continue;
+				float fraction = rayFraction(group, i, x1, y1, dx, dy);
+				if(fraction < 0) continue;
+				
+				// Hits are insertion sorted by distance, since a segment rarely crosses more than a handful of colliders.
+				int n = rayHits.size;
+				rayHits.add(null);
+				rayFractions.add(0);
+				while(n > 0 && rayFractions.get(n - 1) > fraction) {
+					rayHits.set(n, rayHits.get(n - 1));
+					rayFractions.set(n, rayFractions.get(n - 1));
+					n--;
 				}
+				rayHits.set(n, group.bodies[i]);
+				rayFractions.set(n, fraction);
+			}
+		}
+		
+		for(int n = 0; n < rayHits.size; n++) {
+			if(!callback.reportRayCollider(rayHits.get(n), rayFractions.get(n))) break;
+		}
+		rayHits.clear(); // Stops colliders being held onto between raycasts.
+	}
+	
+	// Finds the members of a group whose cached bounding boxes touch an area using the group's index, storing them in queryResults.
+	private void queryGroup(CollisionGroup group, float x0, float y0, float x1, float y1) {
+		queryResults.clear();
+		if(group.isStatic) {
+			if(group.tree != null) group.tree.query(x0, y0, x1, y1, queryResults);
+		}
+		else if(broadphase == SPATIAL_HASH) {
+			group.buildHash(cellSize, frame); // Groups which are not searched by a rule have not been bucketed yet.
+			group.hash.query(x0, y0, x1, y1, queryResults);
+		}
+		else if(broadphase == SWEEP_AND_PRUNE) group.sweepList.query(x0, y0, x1, y1, queryResults);
+		else {
+			for(int i = 0; i < group.size; i++) {
+				if(x0 <= group.maxX[i] && x1 >= group.minX[i] && y0 <= group.maxY[i] && y1 >= group.minY[i]) queryResults.add(i);
 			}
 		}
 	}
 	
+	// Tests a member's bounding box against an area. Swept members are tested where they ended the update, not along their path.
+	private static boolean touches(CollisionGroup group, int i, float x0, float y0, float x1, float y1, boolean overlap) {
+		float minX = group.minX[i], minY = group.minY[i], maxX = group.maxX[i], maxY = group.maxY[i];
+		if((group.flags[i] & CollisionGroup.SWEPT) != 0) {
+			minX += Math.max(group.moveX[i], 0);
+			minY += Math.max(group.moveY[i], 0);
+			maxX += Math.min(group.moveX[i], 0);
+			maxY += Math.min(group.moveY[i], 0);
+		}
+		if(overlap) return x0 < maxX && x1 > minX && y0 < maxY && y1 > minY;
+		return x0 >= minX && x1 <= maxX && y0 >= minY && y1 <= maxY;
+	}
+	
+	// Finds the fraction along a segment where it enters a member's bounding box, or -1 if it misses the box.
+	private static float rayFraction(CollisionGroup group, int i, float x, float y, float dx, float dy) {
+		float minX = group.minX[i], minY = group.minY[i], maxX = group.maxX[i], maxY = group.maxY[i];
+		if((group.flags[i] & CollisionGroup.SWEPT) != 0) {
+			minX += Math.max(group.moveX[i], 0);
+			minY += Math.max(group.moveY[i], 0);
+			maxX += Math.min(group.moveX[i], 0);
+			maxY += Math.min(group.moveY[i], 0);
+		}
+		float enter = 0, exit = 1;
+		if(dx == 0) {
+			if(x < minX || x > maxX) return -1;
+		}
+		else {
+			float t0 = (minX - x) / dx, t1 = (maxX - x) / dx;
+			enter = Math.max(enter, Math.min(t0, t1));
+			exit = Math.min(exit, Math.max(t0, t1));
+		}
+		if(dy == 0) {
+			if(y < minY || y > maxY) return -1;
+		}
+		else {
+			float t0 = (minY - y) / dy, t1 = (maxY - y) / dy;
+			enter = Math.max(enter, Math.min(t0, t1));
+			exit = Math.min(exit, Math.max(t0, t1));
+		}
+		return enter <= exit ? enter : -1;
+	}
+	
+	/** Searches every rule for overlapping pairs of colliders. Each search is recorded as a {@link PairBatch} using
+	 * {@link #addBatch(CollisionRule, int, int)}, and the batches are dispatched in the order they were added once this returns.
+	 * A {@link ParallelCollisionSystem} splits rules into several batches and searches them concurrently, since searching only reads
+	 * the cached bounds. */
+	void findPairs() {
+		for(int r = 0; r < rules.size; r++) {
+			addBatch(rules.get(r), 0, rules.get(r).workSize()).find();
+		}
+	}
+	
+	/** Adds a batch which will hold the overlapping pairs found within part of a rule's search.
+	 * @param rule The rule being searched.
+	 * @param start First position of the rule's search held by this batch.
+	 * @param end Position after the last position of the rule's search held by this batch.
+	 * @return A cleared batch reused from previous updates where possible. */
+	PairBatch addBatch(CollisionRule rule, int start, int end) {
+		if(numBatches == batches.size) batches.add(new PairBatch());
+		PairBatch batch = batches.get(numBatches++);
+		batch.rule = rule;
+		batch.start = start;
+		batch.end = end;
+		batch.pairs.clear();
+		return batch;
+	}
+	
+	/** @return The number of batches added during the current or last update. */
+	int getNumBatches() {
+		return numBatches;
+	}
+	
+	/** @param index Index of the batch in dispatch order.
+	 * @return The batch at the given index. */
+	PairBatch getBatch(int index) {
+		return batches.get(index);
+	}
+	
 	public void createCollisionGroup(String id) {
-		colliders.put(id, new Array<Collidable>());
+		createCollisionGroup(id, false);
+	}
+	
+	/** Creates a new group of colliders which can be collided with other groups by rules.
+	 * @param id The id used to refer to the group.
+	 * @param isStatic Whether the members of the group never move, such as walls and level geometry. Static groups are indexed in an
+	 * {@link AABBTree} which is only rebuilt when members are added, removed or replaced, or {@link #invalidateGroup(String)} is called, and
+	 * static colliders are never tested against each other. When using layers the group is given the next free category bit, and
+	 * at most {@link #MAX_LAYERS} groups may be created. */
+	public void createCollisionGroup(String id, boolean isStatic) {
+		if(useLayers && id.equals(LAYER_GROUP)) throw new IllegalArgumentException("Group id is reserved: " + id);
+		if(useLayers && !groupHandles.containsKey(id) && numLayers == MAX_LAYERS) {
+			throw new IllegalStateException("No more than " + MAX_LAYERS + " groups can be created when using layers.");
+		}
+		Array<Collidable> group = new Array<Collidable>();
+		colliders.put(id, group);
+		
+		CollisionGroup handle = new CollisionGroup(id, group, isStatic);
+		CollisionGroup old = groupHandles.put(id, handle);
+		if(old != null) groups.removeValue(old, true); // Recreating a group replaces the old one.
+		if(useLayers) {
+			if(old == null) {
+				handle.category = 1 << numLayers++;
+				handle.mask = 0;
+			}
+			else {
+				handle.category = old.category; // A recreated group keeps its layers.
+				handle.mask = old.mask;
+				groupHandles.get(LAYER_GROUP).sources.removeValue(old, true);
+				if(old.isStatic) removeStaticLayerRule(id);
+			}
+			
+			// Static groups keep their own tree, which is searched once from the merged group. Other groups are merged.
+			if(isStatic) {
+				groups.add(handle);
+				rules.add(new CollisionRule(LAYER_GROUP, id));
+			}
+			else groupHandles.get(LAYER_GROUP).sources.add(handle);
+		}
+		else groups.add(handle);
+		for(int r = 0; r < rules.size; r++) rules.get(r).resolve(); // Existing rules are pointed at the new group.
+	}
+	
+	/** Adds a collider to a group. Static groups are invalidated, so their tree is rebuilt at the start of the next update.
+	 * @param id The id of the group.
+	 * @param collider The collider to add.
+	 * @return True if the group exists and the collider was added. */
+	public boolean addCollidable(String id, Collidable collider) {
+		Array<Collidable> group = colliders.get(id);
+		if(group == null) return false;
+		group.add(collider);
+		invalidateGroup(id);
+		return true;
 	}
 	
+	/** Removes a collider from a group. Static groups are invalidated, so their tree is rebuilt at the start of the next update.
+	 * @param id The id of the group.
+	 * @param collider The collider to remove.
+	 * @return True if the collider was a member of the group and has been removed. */
+	public boolean removeCollidable(String id, Collidable collider) {
+		Array<Collidable> group = colliders.get(id);
+		if(group == null || !group.removeValue(collider, true)) return false;
+		invalidateGroup(id);
+		return true;
+	}
+	
+	/** Makes the members of two groups collide with each other. When using layers no rule is created, and instead each group's
+	 * category bits are added to the other group's mask bits. */
 	public void createCollisionRule(String groupA, String groupB) {
 		if(colliders.containsKey(groupA) && colliders.containsKey(groupB)) {
-			rules.add(new CollisionRule(groupA, groupB));
+			if(useLayers) {
+				CollisionGroup a = groupHandles.get(groupA), b = groupHandles.get(groupB);
+				setLayerBits(groupA, a.category, a.mask | b.category);
+				setLayerBits(groupB, b.category, b.mask | a.category);
+			}
+			else rules.add(new CollisionRule(groupA, groupB));
+		}
+	}
+	
+	/** Sets the layer bits given to members of a group which do not implement {@link LayeredCollidable}. Only used when the
+	 * CollisionSystem was created with layers enabled, where a pair collides only if each one's category bits share a bit with the
+	 * other's mask bits.
+	 * @param id The id of the group.
+	 * @param category Bits identifying the layers members of the group belong to.
+	 * @param mask Bits identifying the layers members of the group collide with. */
+	public void setLayerBits(String id, int category, int mask) {
+		CollisionGroup group = groupHandles.get(id);
+		if(group == null) return;
+		group.category = category;
+		group.mask = mask;
+		group.invalid = true; // Static groups only read the bits of their members when refreshed.
+	}
+	
+	/** @return Whether pairs are filtered by layer bits rather than searched rule by rule. */
+	public boolean usesLayers() {
+		return useLayers;
+	}
+	
+	/** Marks a static group as changed, so its bounding boxes are read again and its tree rebuilt at the start of the next update.
+	 * Needs to be called when a static collider is moved or resized. Adding, removing or replacing members is detected automatically.
+	 * @param id The id of the group. */
+	public void invalidateGroup(String id) {
+		CollisionGroup group = groupHandles.get(id);
+		if(group != null) group.invalid = true;
+	}
+	
+	/** @param id The id of the group.
+	 * @return The handle for the group with the given id, or null if no such group has been created. */
+	public CollisionGroup getGroup(String id) {
+		return groupHandles.get(id);
+	}
+	
+	/** Changes the broadphase used to find colliding pairs. The BRUTE_FORCE broadphase is cheapest for small numbers of colliders,
+	 * while the SPATIAL_HASH broadphase scales to thousands of colliders spread over the game world. The SWEEP_AND_PRUNE broadphase
+	 * suits colliders which only move a little each frame, since its sorted lists are repaired rather than rebuilt.
+	 * @param broadphase One of {@link #BRUTE_FORCE}, {@link #SPATIAL_HASH} or {@link #SWEEP_AND_PRUNE}. */
+	public void setBroadphase(int broadphase) {
+		if(broadphase != BRUTE_FORCE && broadphase != SPATIAL_HASH && broadphase != SWEEP_AND_PRUNE) {
+			throw new IllegalArgumentException("Unknown broadphase: " + broadphase);
 		}
+		this.broadphase = broadphase;
+	}
+	
+	public int getBroadphase() {
+		return broadphase;
+	}
+	
+	/** Sets the width and height of the cells used by the SPATIAL_HASH broadphase. Cells work best when slightly larger than the
+	 * typical collider, so most colliders only ever occupy one to four cells.
+	 * @param cellSize Width and height of each cell in in-game units. */
+	public void setCellSize(float cellSize) {
+		if(cellSize <= 0) throw new IllegalArgumentException("Cell size must be greater than zero: " + cellSize);
+		this.cellSize = cellSize;
 	}
 	
-	private class CollisionRule {
+	public float getCellSize() {
+		return cellSize;
+	}
+	
+	// Tests the colliders in part of group a against group b using the cached bounding boxes.
+	private static void bruteForcePairs(CollisionGroup a, CollisionGroup b, int start, int end, IntArray pairs) {
+		float[] minXA = a.minX, minYA = a.minY, maxXA = a.maxX, maxYA = a.maxY;
+		float[] minXB = b.minX, minYB = b.minY, maxXB = b.maxX, maxYB = b.maxY;
+		int sizeB = b.size;
+		for(int i = start; i < end; i++) {
+			float x0 = minXA[i], y0 = minYA[i], x1 = maxXA[i], y1 = maxYA[i];
+			for(int j = a == b ? i + 1 : 0; j < sizeB; j++) {
+				// Non short-circuiting operators keep the test free of hard to predict branches.
+				if(x0 < maxXB[j] & x1 > minXB[j] & y0 < maxYB[j] & y1 > minYB[j]) pairs.add(i, j);
+			}
+		}
+	}
+	
+	// Removes the rule searching a static group from the merged group when using layers.
+	private void removeStaticLayerRule(String id) {
+		for(int r = rules.size - 1; r >= 0; r--) {
+			if(rules.get(r).groupA.equals(LAYER_GROUP) && rules.get(r).groupB.equals(id)) rules.removeIndex(r);
+		}
+	}
+	
+	/** Sweeps the bounding boxes of a pair of colliders from their previous positions to their current ones.
+	 * @return The fraction of the way through the update the boxes first overlapped, or -1 if they never overlapped. */
+	static float timeOfImpact(CollisionGroup a, int i, CollisionGroup b, int j) {
+		float moveXA = a.moveX[i], moveYA = a.moveY[i], moveXB = b.moveX[j], moveYB = b.moveY[j];
+		
+		// Boxes at the start of the update are recovered from the boxes covering each collider's path.
+		float x0A = a.minX[i] - Math.min(moveXA, 0), x1A = a.maxX[i] - Math.max(moveXA, 0);
+		float y0A = a.minY[i] - Math.min(moveYA, 0), y1A = a.maxY[i] - Math.max(moveYA, 0);
+		float x0B = b.minX[j] - Math.min(moveXB, 0), x1B = b.maxX[j] - Math.max(moveXB, 0);
+		float y0B = b.minY[j] - Math.min(moveYB, 0), y1B = b.maxY[j] - Math.max(moveYB, 0);
+		
+		// The first box is moved relative to the second, and the times it overlaps the second on each axis are intersected.
+		float moveX = moveXA - moveXB, moveY = moveYA - moveYB;
+		float enter = Float.NEGATIVE_INFINITY, exit = Float.POSITIVE_INFINITY;
+		if(moveX == 0) {
+			if(x0A >= x1B || x1A <= x0B) return -1;
+		}
+		else {
+			float t0 = (x0B - x1A) / moveX, t1 = (x1B - x0A) / moveX;
+			enter = Math.max(enter, Math.min(t0, t1));
+			exit = Math.min(exit, Math.max(t0, t1));
+		}
+		if(moveY == 0) {
+			if(y0A >= y1B || y1A <= y0B) return -1;
+		}
+		else {
+			float t0 = (y0B - y1A) / moveY, t1 = (y1B - y0A) / moveY;
+			enter = Math.max(enter, Math.min(t0, t1));
+			exit = Math.min(exit, Math.max(t0, t1));
+		}
+		
+		if(enter >= exit || enter >= 1 || exit <= 0) return -1;
+		return Math.max(enter, 0);
+	}
+	
+	class CollisionRule {
 		
 		public final String groupA, groupB;
 		
+		CollisionGroup a, b;	// Handles to the groups this rule collides, resolved when the rule is created.
+		final boolean layered;	// Whether pairs found by this rule are filtered by the layer bits of each collider.
+		
 		public CollisionRule(String groupA, String groupB) {
 			this.groupA = groupA;
 			this.groupB = groupB;
+			layered = useLayers;
+			resolve();
+		}
+		
+		// Points the rule at the current handles for its groups.
+		private void resolve() {
+			a = groupHandles.get(groupA);
+			b = groupHandles.get(groupB);
+		}
+		
+		/** @return The number of positions the rule's search is made of. Each position is one collider to search from. */
+		int workSize() {
+			if(a.isStatic && b.isStatic) return 0;	// Static colliders never need to be tested against each other.
+			if(a.isStatic) return b.size;			// Dynamic colliders are searched for in the static group's tree.
+			if(b.isStatic) return a.size;
+			if(broadphase == SWEEP_AND_PRUNE && a != b) return a.sweepList.size() + b.sweepList.size();
+			return a.size;
+		}
+		
+		/** Finds the overlapping pairs searched from part of the rule's search. Only reads the groups' cached buffers, so different
+		 * parts of the search may be run on separate threads at once. */
+		void findPairs(int start, int end, IntArray pairs) {
+			if(b.isStatic) b.tree.findPairs(a, start, end, false, pairs);
+			else if(a.isStatic) a.tree.findPairs(b, start, end, true, pairs);
+			else if(broadphase == SWEEP_AND_PRUNE) {
+				if(a == b) a.sweepList.findPairs(start, end, pairs);
+				else a.sweepList.findPairs(b.sweepList, start, end, pairs);
+			}
+			else if(broadphase == SPATIAL_HASH) {
+				if(a == b) a.hash.findPairs(start, end, pairs);
+				else b.hash.findPairs(a, start, end, pairs);
+			}
+			else bruteForcePairs(a, b, start, end, pairs);
+		}
+	}
+	
+	/** Receives the colliders found by {@link CollisionSystem#queryAABB(Rectangle, QueryCallback)} and
+	 * {@link CollisionSystem#queryPoint(float, float, QueryCallback)}. Implementations are intended to be created once and reused. */
+	public interface QueryCallback {
+		
+		/** @param collider A collider found by the query.
+		 * @return True to continue the query, or false to stop it. */
+		public boolean reportCollider(Collidable collider);
+	}
+	
+	/** Receives the colliders found by {@link CollisionSystem#raycast(float, float, float, float, RaycastCallback)}, nearest first.
+	 * Implementations are intended to be created once and reused. */
+	public interface RaycastCallback {
+		
+		/** @param collider A collider crossed by the segment.
+		 * @param fraction Fraction of the way along the segment it enters the collider's bounding box. 0 if it starts inside it.
+		 * @return True to continue the raycast, or false to stop it. */
+		public boolean reportRayCollider(Collidable collider, float fraction);
+	}
+	
+	/** Overlapping pairs found within part of a rule's search, stored as pairs of indices into the rule's two groups. */
+	static class PairBatch {
+		
+		CollisionRule rule;		// The rule the pairs were found for.
+		int start, end;			// The part of the rule's search covered by this batch.
+		final IntArray pairs = new IntArray();
+		
+		/** Searches the batch's part of its rule for overlapping pairs. Pairs whose layer bits do not match, and pairs involving a
+		 * swept collider whose paths did not actually cross, are then removed. */
+		void find() {
+			rule.findPairs(start, end, pairs);
+			
+			CollisionGroup a = rule.a, b = rule.b;
+			boolean layered = rule.layered, swept = a.numSwept != 0 || b.numSwept != 0;
+			if(!layered && !swept) return;
+			int[] items = pairs.items;
+			int n = 0;
+			for(int p = 0; p < pairs.size; p += 2) {
+				int i = items[p], j = items[p + 1];
+				if(layered && ((a.categories[i] & b.masks[j]) == 0 || (b.categories[j] & a.masks[i]) == 0)) continue;
+				if(swept && ((a.flags[i] | b.flags[j]) & CollisionGroup.SWEPT) != 0 && timeOfImpact(a, i, b, j) < 0) continue;
+				items[n++] = i;
+				items[n++] = j;
+			}
+			pairs.size = n;
 		}
 	}
 
@@ -0,0 +1,85 @@
+package psyknz.libgdx.architecture;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.badlogic.gdx.math.MathUtils;
+
+/** Fixed size ring buffer which {@link GameEvent} objects can be offered to from any number of threads, such as network or audio
+ * threads, and polled from a single thread, normally the rendering thread through an {@link EventBus}. Neither side takes a lock or
+ * allocates anything: producers claim a slot by advancing the tail with a compare and set, and the consumer empties slots in order.
+ * When the buffer is full new events are dropped rather than blocking the producer, and counted so the buffer can be sized to the
+ * traffic it sees. GWT has no AtomicReferenceArray, so the HTML backend compiles a single threaded version from the module's emu
+ * super source in its place.
+ * @author Alex Crowther */
+public class ConcurrentEventQueue {
+	
+	private final AtomicReferenceArray<GameEvent> slots;	// Event waiting in each slot, or null once the slot has been polled.
+	private final int mask;									// Capacity minus one, used to wrap positions onto slots.
+	private final AtomicLong tail;							// Position the next event offered will be stored at.
+	private volatile long head;								// Position the next event will be polled from. Only written by the consumer.
+	private final AtomicLong dropped;						// Number of events dropped because the buffer was full.
+	private int maxDepth;									// Most events waiting at once when polled. Only used by the consumer.
+	
+	/** Creates a new empty ConcurrentEventQueue.
+	 * @param capacity The number of events which can wait at once, rounded up to a power of two. */
+	public ConcurrentEventQueue(int capacity) {
+		if(capacity < 1) throw new IllegalArgumentException("Capacity must be at least one: " + capacity);
+		capacity = MathUtils.nextPowerOfTwo(capacity);
+		slots = new AtomicReferenceArray<GameEvent>(capacity);
+		mask = capacity - 1;
+		tail = new AtomicLong();
+		dropped = new AtomicLong();
+	}
+	
+	/** Adds an event to the back of the queue. Safe to call from any thread.
+	 * @param event The event to add. Must not be touched by the calling thread afterwards.
+	 * @return True if the event was added, or false if the queue was full and the event was dropped. */
+	public boolean offer(GameEvent event) {
+		while(true) {
+			long position = tail.get();
+			if(position - head > mask) {
+				dropped.incrementAndGet();
+				return false;
+			}
+			if(tail.compareAndSet(position, position + 1)) {
+				slots.lazySet((int) position & mask, event); // Publishes the event to the consumer once it has been fully written.
+				return true;
+			}
+		}
+	}
+	
+	/** Removes the event at the front of the queue. Must only be called from the consumer thread.
+	 * @return The event at the front of the queue, or null if the queue is empty or the next event is still being added. */
+	public GameEvent poll() {
+		long position = head;
+		int slot = (int) position & mask;
+		GameEvent event = slots.get(slot);
+		if(event == null) return null;
+		int depth = (int) (tail.get() - position);
+		if(depth > maxDepth) maxDepth = depth;
+		slots.lazySet(slot, null);
+		head = position + 1; // The slot is empty before the head moves past it, so producers never overwrite an unpolled event.
+		return event;
+	}
+	
+	/** @return The number of events waiting, including any still being added. Only an estimate while other threads are offering events. */
+	public int getDepth() {
+		return (int) (tail.get() - head);
+	}
+	
+	/** @return The most events which have been waiting at once when the consumer polled. */
+	public int getMaxDepth() {
+		return maxDepth;
+	}
+	
+	/** @return The number of events dropped because the queue was full. */
+	public long getDropped() {
+		return dropped.get();
+	}
+	
+	/** @return The number of events which can wait at once. */
+	public int getCapacity() {
+		return mask + 1;
+	}
+}
@@ -0,0 +1,18 @@
+package psyknz.libgdx.architecture;
+
+/** Extension of {@link Collidable} for objects which need to know when a contact with another Collidable starts and ends. The
+ * {@link CollisionSystem} tracks every pair involving a ContactCollidable between updates, so expensive work can be done once per
+ * contact rather than on every update the two bounding boxes overlap.
+ * @author Alex Crowther */
+public interface ContactCollidable extends Collidable {
+	
+	/** Called on the first update this Collidable's bounding box overlaps another's, before {@link #collision(Collidable)}.
+	 * @param collider Reference to the other Collidable this object has started touching. */
+	public void beginContact(Collidable collider);
+	
+	/** {@link #collision(Collidable)} continues to be called on every update the contact persists. This is called on the first
+	 * update the two bounding boxes no longer overlap, or either Collidable is no longer covered by a rule.
+	 * @param collider Reference to the other Collidable this object has stopped touching. */
+	public void endContact(Collidable collider);
+	
+}
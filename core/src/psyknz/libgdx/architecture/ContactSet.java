@@ -0,0 +1,108 @@
+package psyknz.libgdx.architecture;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.LongMap;
+import com.badlogic.gdx.utils.Pool;
+
+/** Set of the pairs of {@link Collidable} objects currently touching, used by the {@link CollisionSystem} to send begin and end
+ * notifications to {@link ContactCollidable} objects. Pairs are keyed by a long packed from the identity hash codes of both objects,
+ * and contacts are pooled, so tracking contacts does not allocate once the set has warmed up.
+ * @author Alex Crowther */
+class ContactSet {
+	
+	private final LongMap<Contact> contacts;	// Active contacts keyed by the packed identity hash codes of both colliders.
+	private final Pool<Contact> pool;			// Pool of contacts which have ended, reused for new contacts.
+	private final Array<Contact> ended;			// Contacts which ended this update, notified once the set has been swept.
+	private int size;							// Number of active contacts.
+	
+	ContactSet() {
+		contacts = new LongMap<Contact>();
+		pool = new Pool<Contact>() {
+			@Override
+			protected Contact newObject() {
+				return new Contact();
+			}
+		};
+		ended = new Array<Contact>();
+	}
+	
+	/** Marks the pair as touching in the given update.
+	 * @return True if the pair was not touching in the previous update. */
+	boolean touch(Collidable a, int hashA, Collidable b, int hashB, int frame) {
+		long key = key(hashA, hashB);
+		Contact head = contacts.get(key);
+		for(Contact c = head; c != null; c = c.next) {	// Different objects may share identity hash codes, so each key holds a chain.
+			if((c.a == a && c.b == b) || (c.a == b && c.b == a)) {
+				c.frame = frame;	// Contacts still in the set were touching last update, since untouched contacts are removed.
+				return false;
+			}
+		}
+		
+		Contact c = pool.obtain();
+		c.a = a;
+		c.b = b;
+		c.frame = frame;
+		c.next = head;
+		contacts.put(key, c);
+		size++;
+		return true;
+	}
+	
+	/** Removes every contact which was not touched in the given update and notifies any {@link ContactCollidable} involved. */
+	void endUntouched(int frame) {
+		LongMap.Entries<Contact> entries = contacts.entries();
+		while(entries.hasNext()) {
+			LongMap.Entry<Contact> entry = entries.next();
+			Contact head = entry.value, previous = null;
+			for(Contact c = entry.value; c != null; c = c.next) {
+				if(c.frame == frame) previous = c;
+				else {
+					if(previous == null) head = c.next;	// Ended contacts are unlinked from their chain.
+					else previous.next = c.next;
+					ended.add(c);
+				}
+			}
+			if(head == null) entries.remove();
+			else if(head != entry.value) contacts.put(entry.key, head);
+		}
+		
+		// Notifications are sent once the map is no longer being iterated over.
+		for(int i = 0; i < ended.size; i++) {
+			Contact c = ended.get(i);
+			if(c.a instanceof ContactCollidable) ((ContactCollidable) c.a).endContact(c.b);
+			if(c.b instanceof ContactCollidable) ((ContactCollidable) c.b).endContact(c.a);
+			c.a = c.b = null;
+			c.next = null;
+			pool.free(c);
+		}
+		size -= ended.size;
+		ended.clear();
+	}
+	
+	/** @return True if the pair touched in the most recent update. */
+	boolean contains(Collidable a, Collidable b) {
+		for(Contact c = contacts.get(key(System.identityHashCode(a), System.identityHashCode(b))); c != null; c = c.next) {
+			if((c.a == a && c.b == b) || (c.a == b && c.b == a)) return true;
+		}
+		return false;
+	}
+	
+	/** @return The number of active contacts. */
+	int size() {
+		return size;
+	}
+	
+	// Packs two identity hash codes into a key which is the same whichever order the pair is given in.
+	private static long key(int hashA, int hashB) {
+		int low = Math.min(hashA, hashB), high = Math.max(hashA, hashB);
+		return ((long) high << 32) | (low & 0xFFFFFFFFL);
+	}
+	
+	// A pair of colliders which are touching.
+	private static class Contact {
+		
+		Collidable a, b;	// The colliders which are touching.
+		int frame;			// The last update the pair was found to be touching in.
+		Contact next;		// Next contact sharing the same key.
+	}
+}
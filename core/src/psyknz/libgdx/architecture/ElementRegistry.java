@@ -0,0 +1,218 @@
+package psyknz.libgdx.architecture;
+
+import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+import com.badlogic.gdx.math.Rectangle;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.BooleanArray;
+import com.badlogic.gdx.utils.IntArray;
+
+/** Ordered collection of the {@link GameElement} objects managed by a {@link GameScreen}. Every element is updated, but only elements
+ * which are in view are drawn. Each {@link BoundedElement} is tested against the area being drawn, and static elements, such as
+ * level scenery which never moves, are indexed in an {@link AABBTree} so drawing costs depend on what is visible rather than the
+ * size of the game world. Elements are always updated and drawn in the order they were added. Elements may be added and removed
+ * while the registry is being updated, in which case the change takes effect once the update has finished.
+ * @author Alex Crowther */
+public class ElementRegistry {
+	
+	private final Array<GameElement> elements;	// Every element in the order they were added.
+	private final BooleanArray statics;			// Whether each element was added as static.
+	
+	private final Array<GameElement> pending;	// Elements added or removed during an update, applied once it finishes.
+	private final BooleanArray pendingAdds;		// Whether each pending element is being added (true) or removed (false).
+	private final BooleanArray pendingStatics;	// Whether each pending element is being added as static.
+	private boolean iterating;					// Whether the elements are currently being updated or drawn.
+	
+	private final AABBTree tree;				// Index of the bounds of every static BoundedElement.
+	private final IntArray treePositions;		// Position in elements of each box in the tree.
+	private final IntArray otherPositions;		// Position in elements of every element not in the tree.
+	private float[] minX, minY, maxX, maxY;		// Bounds of every static BoundedElement when the tree was last built.
+	private boolean invalid;					// Whether the tree needs to be rebuilt before drawing.
+	private boolean moved;						// Whether elements have been added or removed since the position lists were built.
+	
+	private final IntArray visible;	// Positions of the elements found to be in view, reused each draw.
+	private int numDrawn;			// Number of elements drawn during the last draw.
+	
+	/** Creates a new empty ElementRegistry. */
+	public ElementRegistry() {
+		elements = new Array<GameElement>();
+		statics = new BooleanArray();
+		pending = new Array<GameElement>();
+		pendingAdds = new BooleanArray();
+		pendingStatics = new BooleanArray();
+		tree = new AABBTree();
+		treePositions = new IntArray();
+		otherPositions = new IntArray();
+		minX = new float[16];
+		minY = new float[16];
+		maxX = new float[16];
+		maxY = new float[16];
+		visible = new IntArray();
+	}
+	
+	/** Adds an element which is updated and drawn every frame it is in view.
+	 * @param element The element to add. */
+	public void add(GameElement element) {
+		add(element, false);
+	}
+	
+	/** Adds an element to the end of the registry, so it is drawn on top of every element added before it.
+	 * @param element The element to add.
+	 * @param isStatic Whether the element's bounds never change. Static {@link BoundedElement} objects are indexed in a tree which is
+	 * only rebuilt when static elements are added or removed or {@link #invalidate()} is called. */
+	public void add(GameElement element, boolean isStatic) {
+		if(iterating) {
+			pending.add(element);
+			pendingAdds.add(true);
+			pendingStatics.add(isStatic);
+			return;
+		}
+		elements.add(element);
+		statics.add(isStatic);
+		moved = true;
+		if(isStatic) invalid = true;
+	}
+	
+	/** Removes an element from the registry.
+	 * @param element The element to remove. */
+	public void remove(GameElement element) {
+		if(iterating) {
+			pending.add(element);
+			pendingAdds.add(false);
+			pendingStatics.add(false);
+			return;
+		}
+		int index = elements.indexOf(element, true);
+		if(index < 0) return;
+		if(statics.get(index)) invalid = true;
+		elements.removeIndex(index);
+		statics.removeIndex(index);
+		moved = true;
+	}
+	
+	/** Removes every element from the registry. */
+	public void clear() {
+		elements.clear();
+		statics.clear();
+		pending.clear();
+		pendingAdds.clear();
+		pendingStatics.clear();
+		moved = invalid = true;
+	}
+	
+	/** Marks the bounds of the static elements as changed, so they are read again and the tree rebuilt before the next draw. Needs to
+	 * be called when a static element is moved or resized. */
+	public void invalidate() {
+		invalid = true;
+	}
+	
+	/** Updates every element in the order they were added.
+	 * @param delta The time in seconds since the last update. */
+	public void update(float delta) {
+		iterating = true;
+		try {
+			for(int i = 0; i < elements.size; i++) elements.get(i).update(delta);
+		}
+		finally {
+			iterating = false; // Cleared even if an element throws, or every later change would be deferred forever.
+			applyPending();
+		}
+	}
+	
+	/** Draws every element which is in view, in the order they were added.
+	 * @param batch The {@link SpriteBatch} being used to draw the elements.
+	 * @param drawArea The area of the game currently visible. Elements are not culled if this is null. */
+	public void draw(SpriteBatch batch, Rectangle drawArea) {
+		if(moved) findPositions();
+		if(invalid) rebuildTree();
+		visible.clear();
+		if(drawArea == null) {
+			for(int i = 0; i < elements.size; i++) visible.add(i);
+		}
+		else {
+			float x0 = drawArea.x, y0 = drawArea.y, x1 = drawArea.x + drawArea.width, y1 = drawArea.y + drawArea.height;
+			tree.query(x0, y0, x1, y1, visible);
+			int found = visible.size;
+			for(int k = 0; k < found; k++) visible.set(k, treePositions.get(visible.get(k)));
+			for(int k = 0; k < otherPositions.size; k++) {
+				int i = otherPositions.get(k);
+				GameElement element = elements.get(i);
+				if(element instanceof BoundedElement) {
+					Rectangle r = ((BoundedElement) element).getBounds();
+					if(r.x > x1 || r.x + r.width < x0 || r.y > y1 || r.y + r.height < y0) continue;
+				}
+				visible.add(i);
+			}
+			if(found > 0) visible.sort(); // The tree reports elements in spatial order, so they are put back in the order they were added.
+		}
+		
+		iterating = true;
+		try {
+			for(int k = 0; k < visible.size; k++) elements.get(visible.get(k)).draw(batch, drawArea);
+		}
+		finally {
+			iterating = false;
+			numDrawn = visible.size;
+			applyPending();
+		}
+	}
+	
+	/** @return The number of elements in the registry. */
+	public int size() {
+		return elements.size;
+	}
+	
+	/** @param index Position of the element in the order they were added.
+	 * @return The element at the given position. */
+	public GameElement get(int index) {
+		return elements.get(index);
+	}
+	
+	/** @return The number of elements which were in view during the last draw. */
+	public int getNumDrawn() {
+		return numDrawn;
+	}
+	
+	// Applies the changes made while the elements were being updated or drawn.
+	private void applyPending() {
+		for(int i = 0; i < pending.size; i++) {
+			if(pendingAdds.get(i)) add(pending.get(i), pendingStatics.get(i));
+			else remove(pending.get(i));
+		}
+		pending.clear();
+		pendingAdds.clear();
+		pendingStatics.clear();
+	}
+	
+	// Splits the elements into those held by the tree and those tested each draw. Static elements keep their order, so the tree only
+	// needs rebuilding when static elements are added or removed.
+	private void findPositions() {
+		treePositions.clear();
+		otherPositions.clear();
+		for(int i = 0; i < elements.size; i++) {
+			if(statics.get(i) && elements.get(i) instanceof BoundedElement) treePositions.add(i);
+			else otherPositions.add(i);
+		}
+		moved = false;
+	}
+	
+	// Reads the bounds of every static element and rebuilds the tree.
+	private void rebuildTree() {
+		int count = treePositions.size;
+		if(minX.length < count) {
+			int capacity = Math.max(count, minX.length * 2);
+			minX = new float[capacity];
+			minY = new float[capacity];
+			maxX = new float[capacity];
+			maxY = new float[capacity];
+		}
+		for(int k = 0; k < count; k++) {
+			Rectangle r = ((BoundedElement) elements.get(treePositions.get(k))).getBounds();
+			minX[k] = r.x;
+			minY[k] = r.y;
+			maxX[k] = r.x + r.width;
+			maxY[k] = r.y + r.height;
+		}
+		tree.build(minX, minY, maxX, maxY, count);
+		invalid = false;
+	}
+}
@@ -0,0 +1,152 @@
+package psyknz.libgdx.architecture;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.ObjectMap;
+import com.badlogic.gdx.utils.Pools;
+import com.badlogic.gdx.utils.SnapshotArray;
+
+/** Routes {@link GameEvent} objects to the {@link GameEventListener} objects subscribed to their type. An event's type is its class,
+ * and listeners are kept in an array per type, so dispatching an event only visits the listeners interested in it. Listeners
+ * subscribed to a class also receive events of its subclasses, so subscribing to GameEvent itself receives everything. Events can be
+ * dispatched straight away with {@link #post(GameEvent)}, or queued with {@link #queue(GameEvent)} and dispatched together when the
+ * queue is drained, which {@link GameScreen} does once at the start of each render. Events obtained from {@link #obtain(Class)} are
+ * taken from a pool and returned to it once dispatched, so even thousands of events a frame allocate nothing once the pools have
+ * warmed up. Listeners must therefore not hold on to events after handling them. Other threads can hand events to the bus with
+ * {@link #offer(GameEvent)}, which passes them through a lock free {@link ConcurrentEventQueue} to be dispatched by the next drain.
+ * @author Alex Crowther */
+public class EventBus {
+	
+	public static final int DEFAULT_INCOMING_CAPACITY = 1024; // Default number of events from other threads which can wait at once.
+	
+	private final ObjectMap<Class<?>, SnapshotArray<GameEventListener>> listeners; // Listeners subscribed to each type of event.
+	
+	private Array<GameEvent> queue;		// Events queued since the queue was last drained.
+	private Array<GameEvent> draining;	// Events being dispatched by the current drain, swapped with the queue each drain.
+	
+	private final ConcurrentEventQueue incoming; // Events offered by other threads, dispatched by the next drain.
+	
+	/** Creates a new EventBus with no listeners, which can hold {@link #DEFAULT_INCOMING_CAPACITY} events offered by other threads. */
+	public EventBus() {
+		this(DEFAULT_INCOMING_CAPACITY);
+	}
+	
+	/** Creates a new EventBus with no listeners.
+	 * @param incomingCapacity The number of events offered by other threads which can wait to be dispatched at once. */
+	public EventBus(int incomingCapacity) {
+		listeners = new ObjectMap<Class<?>, SnapshotArray<GameEventListener>>();
+		queue = new Array<GameEvent>(false, 64);
+		draining = new Array<GameEvent>(false, 64);
+		incoming = new ConcurrentEventQueue(incomingCapacity);
+	}
+	
+	/** Takes an event from the pool for its type. The event is returned to the pool once it has been dispatched.
+	 * @param type The class of the event, which must have a public no-argument constructor.
+	 * @return An event of the given type, reset to its default state. */
+	public <T extends GameEvent> T obtain(Class<T> type) {
+		T event = Pools.obtain(type);
+		event.pooled = true;
+		return event;
+	}
+	
+	/** Subscribes a listener to a type of event. A listener subscribed to the same type twice receives each event twice.
+	 * @param type The class of events the listener receives, including subclasses.
+	 * @param listener The listener to subscribe. */
+	public void subscribe(Class<? extends GameEvent> type, GameEventListener listener) {
+		SnapshotArray<GameEventListener> list = listeners.get(type);
+		if(list == null) {
+			list = new SnapshotArray<GameEventListener>(GameEventListener.class);
+			listeners.put(type, list);
+		}
+		list.add(listener);
+	}
+	
+	/** Unsubscribes a listener from a type of event. Safe to call while events are being dispatched.
+	 * @param type The class of events the listener was subscribed to.
+	 * @param listener The listener to unsubscribe. */
+	public void unsubscribe(Class<? extends GameEvent> type, GameEventListener listener) {
+		SnapshotArray<GameEventListener> list = listeners.get(type);
+		if(list != null) list.removeValue(listener, true);
+	}
+	
+	/** Dispatches an event to every listener subscribed to its type straight away, then returns it to its pool if it came from one.
+	 * @param event The event to dispatch. */
+	public void post(GameEvent event) {
+		dispatch(event);
+		free(event);
+	}
+	
+	/** Queues an event to be dispatched the next time the queue is drained.
+	 * @param event The event to queue. */
+	public void queue(GameEvent event) {
+		queue.add(event);
+	}
+	
+	/** Queues an event from any thread. The event is dispatched on the thread which drains the bus, and is never returned to a pool,
+	 * since pools are not shared between threads.
+	 * @param event The event to queue. Must not be touched by the calling thread afterwards.
+	 * @return True if the event was queued, or false if too many events from other threads were waiting and it was dropped. */
+	public boolean offer(GameEvent event) {
+		return incoming.offer(event);
+	}
+	
+	/** Dispatches every queued event in the order they were queued, followed by the events offered by other threads. Events queued
+	 * while the queue is being drained are dispatched by the next drain, so listeners which queue events in response to each other
+	 * cannot stall a frame. */
+	public void drain() {
+		Array<GameEvent> events = queue;
+		queue = draining;
+		draining = events;
+		for(int n = incoming.getDepth(); n > 0; n--) {
+			GameEvent event = incoming.poll();
+			if(event == null) break; // The rest are still being offered and wait for the next drain.
+			event.pooled = false;
+			events.add(event);
+		}
+		for(int i = 0; i < events.size; i++) {
+			GameEvent event = events.get(i);
+			dispatch(event);
+			free(event);
+		}
+		events.clear();
+	}
+	
+	/** Discards every queued event without dispatching them, including those offered by other threads. */
+	public void clear() {
+		for(int i = 0; i < queue.size; i++) free(queue.get(i));
+		queue.clear();
+		while(incoming.poll() != null) continue;
+	}
+	
+	/** @return The number of events waiting to be dispatched by the next drain. */
+	public int getQueueSize() {
+		return queue.size + incoming.getDepth();
+	}
+	
+	/** @return The {@link ConcurrentEventQueue} holding events offered by other threads, whose depth and dropped event counts can be
+	 * used to tune its capacity. */
+	public ConcurrentEventQueue getIncoming() {
+		return incoming;
+	}
+	
+	// Passes an event to the listeners of its class and each of its superclasses up to GameEvent.
+	private void dispatch(GameEvent event) {
+		Class<?> type = event.getClass();
+		while(true) {
+			SnapshotArray<GameEventListener> list = listeners.get(type);
+			if(list != null && list.size > 0) {
+				GameEventListener[] items = list.begin(); // Listeners can subscribe and unsubscribe while the event is dispatched.
+				for(int i = 0, n = list.size; i < n; i++) items[i].CallEvent(event);
+				list.end();
+			}
+			if(type == GameEvent.class) break;
+			type = type.getSuperclass();
+		}
+	}
+	
+	// Returns an event to its pool if it was obtained from one.
+	private void free(GameEvent event) {
+		if(!event.pooled) return;
+		event.pooled = false;
+		Pools.free(event);
+	}
+}
@@ -0,0 +1,264 @@
+package psyknz.libgdx.architecture;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.graphics.PixmapIO;
+import com.badlogic.gdx.graphics.g2d.BitmapFont.BitmapFontData;
+import com.badlogic.gdx.graphics.g2d.BitmapFont.Glyph;
+import com.badlogic.gdx.graphics.g2d.freetype.FreeTypeFontGenerator;
+import com.badlogic.gdx.graphics.g2d.freetype.FreeTypeFontGenerator.FreeTypeFontParameter;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.badlogic.gdx.utils.StreamUtils;
+
+/** Disk cache of the fonts generated by the {@link FreeTypeFontLoader}, so FreeType only has to rasterise each font the first time
+ * the game is run. Each font is stored as one PNG per glyph page alongside a metrics file holding its {@link BitmapFontData}. The
+ * metrics file is a binary dump of the font data rather than a BMFont .fnt file, since BitmapFontData rounds and derives several
+ * metrics while parsing a .fnt file, so a font read from one would not lay out exactly like the font FreeType generated. Entries are
+ * keyed by a hash of the font file's contents, every field of the {@link FreeTypeFontParameter} which affects the generated glyphs
+ * and the size of the pages they are packed into, so changing any of them simply misses the cache.
+ * @author Alex Crowther */
+public class FontCache {
+	
+	public static final int VERSION = 1; // Version of the metrics file format. Entries written by other versions are ignored.
+	
+	private final FileHandle directory; // Directory the cached fonts are stored in.
+	
+	/** Creates a new FontCache.
+	 * @param directory Writable directory the cached fonts are stored in, such as Gdx.files.local("fonts"). */
+	public FontCache(FileHandle directory) {
+		this.directory = directory;
+	}
+	
+	/** Works out the key a font is cached under. Reads the whole font file, which is far quicker than rasterising it.
+	 * @param fontFile The .ttf file the font is generated from.
+	 * @param parameter The parameters the font is generated with.
+	 * @return The key identifying the generated font. */
+	public String getKey(FileHandle fontFile, FreeTypeFontParameter parameter) {
+		long hash = 0xcbf29ce484222325L; // 64 bit FNV-1a hash of the font file followed by the parameters.
+		byte[] bytes = fontFile.readBytes();
+		for(int i = 0; i < bytes.length; i++) hash = (hash ^ (bytes[i] & 0xFF)) * 0x100000001b3L;
+		CharSequence settings = getSettings(parameter);
+		for(int i = 0; i < settings.length(); i++) hash = (hash ^ settings.charAt(i)) * 0x100000001b3L;
+		return fontFile.nameWithoutExtension() + "_" + Long.toHexString(hash);
+	}
+	
+	// Lists every parameter which changes the glyphs FreeType generates, their metrics or the pages they are packed into. Of a given
+	// packer only the page size is listed, since fonts packed into a shared packer are never cached.
+	private static CharSequence getSettings(FreeTypeFontParameter parameter) {
+		StringBuilder settings = new StringBuilder(256);
+		settings.append(VERSION).append(':').append(parameter.size).append(':').append(parameter.mono).append(':')
+				.append(parameter.hinting).append(':').append(parameter.color).append(':').append(parameter.gamma).append(':')
+				.append(parameter.renderCount).append(':').append(parameter.borderWidth).append(':').append(parameter.borderColor)
+				.append(':').append(parameter.borderStraight).append(':').append(parameter.borderGamma).append(':')
+				.append(parameter.shadowOffsetX).append(':').append(parameter.shadowOffsetY).append(':').append(parameter.shadowColor)
+				.append(':').append(parameter.spaceX).append(':').append(parameter.spaceY).append(':').append(parameter.padTop)
+				.append(':').append(parameter.padLeft).append(':').append(parameter.padBottom).append(':').append(parameter.padRight)
+				.append(':').append(parameter.kerning).append(':').append(parameter.flip).append(':').append(parameter.genMipMaps)
+				.append(':').append(parameter.minFilter).append(':').append(parameter.magFilter).append(':')
+				.append(parameter.incremental).append(':');
+		if(parameter.packer != null) settings.append(parameter.packer.getPageWidth()).append('x').append(parameter.packer.getPageHeight());
+		else settings.append(FreeTypeFontGenerator.getMaxTextureSize()); // Limits the size of the pages FreeTypeFontLoader creates.
+		return settings.append(':').append(parameter.characters);
+	}
+	
+	/** Reads the metrics of a cached font.
+	 * @param key The key the font is cached under.
+	 * @return The font's metrics, with glyph texture coordinates still to be set from its pages, or null if the font is not cached
+	 * or its entry could not be read. */
+	public BitmapFontData readData(String key) {
+		FileHandle file = directory.child(key + ".bin");
+		if(!file.exists()) return null;
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(file.read(4096));
+			if(in.readInt() != VERSION) return null;
+			BitmapFontData data = new BitmapFontData();
+			data.imagePaths = new String[in.readInt()];
+			for(int i = 0; i < data.imagePaths.length; i++) {
+				data.imagePaths[i] = getPage(key, i).path();
+				if(!getPage(key, i).exists()) return null;
+			}
+			data.name = in.readUTF();
+			data.flipped = in.readBoolean();
+			data.markupEnabled = in.readBoolean();
+			data.padTop = in.readFloat();
+			data.padRight = in.readFloat();
+			data.padBottom = in.readFloat();
+			data.padLeft = in.readFloat();
+			data.lineHeight = in.readFloat();
+			data.capHeight = in.readFloat();
+			data.ascent = in.readFloat();
+			data.descent = in.readFloat();
+			data.down = in.readFloat();
+			data.blankLineScale = in.readFloat();
+			data.scaleX = in.readFloat();
+			data.scaleY = in.readFloat();
+			data.cursorX = in.readFloat();
+			data.spaceXadvance = in.readFloat();
+			data.xHeight = in.readFloat();
+			data.breakChars = readChars(in);
+			data.xChars = readChars(in);
+			data.capChars = readChars(in);
+			for(int n = in.readInt(); n > 0; n--) {
+				Glyph glyph = readGlyph(in);
+				data.setGlyph(glyph.id, glyph);
+			}
+			if(in.readBoolean()) data.missingGlyph = readGlyph(in);
+			return data;
+		}
+		catch(IOException e) {
+			return null; // A damaged entry is treated as a miss and overwritten once the font has been generated.
+		}
+		catch(GdxRuntimeException e) {
+			return null;
+		}
+		finally {
+			StreamUtils.closeQuietly(in);
+		}
+	}
+	
+	/** @param key The key the font is cached under.
+	 * @param page Index of the glyph page.
+	 * @return The PNG file holding the given glyph page of a cached font. */
+	public FileHandle getPage(String key, int page) {
+		return directory.child(key + "_" + page + ".png");
+	}
+	
+	/** Writes a generated font to the cache. Failures are ignored, since the font can always be generated again.
+	 * @param key The key to cache the font under.
+	 * @param data The font's metrics.
+	 * @param pages The pixmap holding each of the font's glyph pages. */
+	public void write(String key, BitmapFontData data, Array<Pixmap> pages) {
+		DataOutputStream out = null;
+		boolean written = false;
+		try {
+			for(int i = 0; i < pages.size; i++) PixmapIO.writePNG(getPage(key, i), pages.get(i));
+			
+			// The metrics are written last so an interrupted write is never mistaken for a complete entry.
+			out = new DataOutputStream(directory.child(key + ".bin").write(false, 4096));
+			out.writeInt(VERSION);
+			out.writeInt(pages.size);
+			out.writeUTF(data.name == null ? "" : data.name);
+			out.writeBoolean(data.flipped);
+			out.writeBoolean(data.markupEnabled);
+			out.writeFloat(data.padTop);
+			out.writeFloat(data.padRight);
+			out.writeFloat(data.padBottom);
+			out.writeFloat(data.padLeft);
+			out.writeFloat(data.lineHeight);
+			out.writeFloat(data.capHeight);
+			out.writeFloat(data.ascent);
+			out.writeFloat(data.descent);
+			out.writeFloat(data.down);
+			out.writeFloat(data.blankLineScale);
+			out.writeFloat(data.scaleX);
+			out.writeFloat(data.scaleY);
+			out.writeFloat(data.cursorX);
+			out.writeFloat(data.spaceXadvance);
+			out.writeFloat(data.xHeight);
+			writeChars(out, data.breakChars);
+			writeChars(out, data.xChars);
+			writeChars(out, data.capChars);
+			
+			int count = 0;
+			for(Glyph[] page : data.glyphs) {
+				if(page == null) continue;
+				for(Glyph glyph : page) if(glyph != null) count++;
+			}
+			out.writeInt(count);
+			for(Glyph[] page : data.glyphs) {
+				if(page == null) continue;
+				for(Glyph glyph : page) if(glyph != null) writeGlyph(out, glyph);
+			}
+			out.writeBoolean(data.missingGlyph != null);
+			if(data.missingGlyph != null) writeGlyph(out, data.missingGlyph);
+			written = true;
+		}
+		catch(IOException e) {
+			// Handled below along with any other failure.
+		}
+		catch(GdxRuntimeException e) {
+			// Thrown when the directory is not writable, such as on platforms without local storage.
+		}
+		finally {
+			StreamUtils.closeQuietly(out);
+			if(!written) directory.child(key + ".bin").delete();
+		}
+	}
+	
+	/** Deletes every cached font. */
+	public void clear() {
+		directory.deleteDirectory();
+	}
+	
+	public FileHandle getDirectory() {
+		return directory;
+	}
+	
+	private static void writeChars(DataOutputStream out, char[] chars) throws IOException {
+		out.writeInt(chars == null ? -1 : chars.length);
+		if(chars != null) for(int i = 0; i < chars.length; i++) out.writeChar(chars[i]);
+	}
+	
+	private static char[] readChars(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if(length < 0) return null;
+		char[] chars = new char[length];
+		for(int i = 0; i < length; i++) chars[i] = in.readChar();
+		return chars;
+	}
+	
+	// Writes everything needed to rebuild a glyph. Texture coordinates are recalculated from the glyph's page when it is read.
+	private static void writeGlyph(DataOutputStream out, Glyph glyph) throws IOException {
+		out.writeInt(glyph.id);
+		out.writeInt(glyph.srcX);
+		out.writeInt(glyph.srcY);
+		out.writeInt(glyph.width);
+		out.writeInt(glyph.height);
+		out.writeInt(glyph.xoffset);
+		out.writeInt(glyph.yoffset);
+		out.writeInt(glyph.xadvance);
+		out.writeInt(glyph.page);
+		out.writeBoolean(glyph.fixedWidth);
+		
+		int count = 0;
+		if(glyph.kerning != null) {
+			for(byte[] page : glyph.kerning) {
+				if(page == null) continue;
+				for(int i = 0; i < page.length; i++) if(page[i] != 0) count++;
+			}
+		}
+		out.writeInt(count);
+		if(glyph.kerning == null) return;
+		for(int p = 0; p < glyph.kerning.length; p++) {
+			byte[] page = glyph.kerning[p];
+			if(page == null) continue;
+			for(int i = 0; i < page.length; i++) {
+				if(page[i] == 0) continue;
+				out.writeChar((p << 9) | i); // Kerning is stored in pages of 512 characters, indexed by the following character.
+				out.writeByte(page[i]);
+			}
+		}
+	}
+	
+	private static Glyph readGlyph(DataInputStream in) throws IOException {
+		Glyph glyph = new Glyph();
+		glyph.id = in.readInt();
+		glyph.srcX = in.readInt();
+		glyph.srcY = in.readInt();
+		glyph.width = in.readInt();
+		glyph.height = in.readInt();
+		glyph.xoffset = in.readInt();
+		glyph.yoffset = in.readInt();
+		glyph.xadvance = in.readInt();
+		glyph.page = in.readInt();
+		glyph.fixedWidth = in.readBoolean();
+		for(int n = in.readInt(); n > 0; n--) glyph.setKerning(in.readChar(), in.readByte());
+		return glyph;
+	}
+}
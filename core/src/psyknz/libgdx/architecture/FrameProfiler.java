@@ -0,0 +1,194 @@
+package psyknz.libgdx.architecture;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.graphics.g2d.BitmapFont;
+import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.badlogic.gdx.utils.StreamUtils;
+import com.badlogic.gdx.utils.StringBuilder;
+import com.badlogic.gdx.utils.TimeUtils;
+
+/** Records how long each phase of a {@link GameScreen}'s render cycle takes, along with counters such as draw calls, into fixed size
+ * ring buffers holding the most recent frames. Nothing is allocated while recording, and a disabled profiler does nothing, so it can
+ * be left in place in release builds. Percentiles over the recorded frames can be read back, drawn on screen or written to a CSV
+ * file for comparison between builds.
+ * @author Alex Crowther */
+public class FrameProfiler {
+	
+	public static final int FRAME = 0;				// Nanoseconds taken by the whole render call.
+	public static final int UPDATE = 1;				// Nanoseconds spent updating game logic.
+	public static final int COLLISION = 2;			// Nanoseconds spent updating a CollisionSystem, timed by the game itself.
+	public static final int DRAW = 3;				// Nanoseconds spent drawing the screen and its elements.
+	public static final int FLUSH = 4;				// Nanoseconds spent drawing the sprites in the screen's RenderQueue.
+	public static final int BATCH_END = 5;			// Nanoseconds spent in SpriteBatch.end(), where the last batch is sent to the GPU.
+	public static final int RENDER_CALLS = 6;		// Draw calls made by the SpriteBatch during the frame.
+	public static final int TOTAL_RENDER_CALLS = 7;	// Draw calls made by the SpriteBatch since it was created.
+	public static final int COLLISION_PAIRS = 8;	// Colliding pairs found by a CollisionSystem, recorded by the game itself.
+	public static final int NUM_CHANNELS = 9;		// Number of channels recorded for each frame.
+	
+	public static final int DEFAULT_CAPACITY = 600;	// Default number of frames held, ten seconds at 60 frames per second.
+	
+	private static final String[] NAMES = {"frame", "update", "collision", "draw", "flush", "batch_end", "render_calls",
+		"total_render_calls", "collision_pairs"};
+	private static final boolean[] TIMED = {true, true, true, true, true, true, false, false, false};
+	
+	private boolean enabled;			// Whether anything is recorded.
+	private final int capacity;			// Number of frames held by the ring buffers.
+	private final long[][] values;		// Ring buffer of the value recorded for each frame, one per channel.
+	private final long[] starts;		// Time each channel was last started in nanoseconds.
+	private long frameStart;			// Time the current frame started in nanoseconds.
+	private int head;					// Position in the ring buffers the current frame is recorded at.
+	private int count;					// Number of frames held in the ring buffers.
+	private final long[] sorted;		// Scratch space used to find percentiles.
+	private final StringBuilder text;	// Text of the overlay, rebuilt each time it is drawn.
+	
+	/** Creates a new disabled FrameProfiler holding the {@link #DEFAULT_CAPACITY} most recent frames. */
+	public FrameProfiler() {
+		this(DEFAULT_CAPACITY);
+	}
+	
+	/** Creates a new disabled FrameProfiler.
+	 * @param capacity The number of recent frames held. */
+	public FrameProfiler(int capacity) {
+		if(capacity < 1) throw new IllegalArgumentException("Capacity must be at least one: " + capacity);
+		this.capacity = capacity;
+		values = new long[NUM_CHANNELS][capacity];
+		starts = new long[NUM_CHANNELS];
+		sorted = new long[capacity];
+		text = new StringBuilder();
+	}
+	
+	/** Starts recording a new frame. Called by the {@link GameScreen} at the start of each render. */
+	public void beginFrame() {
+		if(!enabled) return;
+		for(int c = 0; c < NUM_CHANNELS; c++) values[c][head] = 0;
+		frameStart = TimeUtils.nanoTime();
+	}
+	
+	/** Finishes recording the current frame. Called by the {@link GameScreen} at the end of each render. */
+	public void endFrame() {
+		if(!enabled) return;
+		values[FRAME][head] = TimeUtils.nanoTime() - frameStart;
+		head = (head + 1) % capacity;
+		if(count < capacity) count++;
+	}
+	
+	/** Starts timing a phase of the current frame.
+	 * @param channel The channel the phase is recorded in, such as {@link #COLLISION}. */
+	public void begin(int channel) {
+		if(enabled) starts[channel] = TimeUtils.nanoTime();
+	}
+	
+	/** Stops timing a phase of the current frame. A phase timed several times in one frame, such as UPDATE using a fixed timestep,
+	 * records the total time.
+	 * @param channel The channel the phase is recorded in. */
+	public void end(int channel) {
+		if(enabled) values[channel][head] += TimeUtils.nanoTime() - starts[channel];
+	}
+	
+	/** Records a value for the current frame, such as {@link CollisionSystem#getNumPairs()} in the {@link #COLLISION_PAIRS} channel.
+	 * @param channel The channel the value is recorded in.
+	 * @param value The value to record. */
+	public void record(int channel, long value) {
+		if(enabled) values[channel][head] = value;
+	}
+	
+	/** Finds a percentile of the values recorded for a channel over the frames held, using the nearest rank.
+	 * @param channel The channel to read.
+	 * @param percentile The percentile to find, from 0 to 100.
+	 * @return The value at the given percentile, or 0 if no frames have been recorded. */
+	public long getPercentile(int channel, float percentile) {
+		if(count == 0) return 0;
+		System.arraycopy(values[channel], 0, sorted, 0, count); // Order does not matter since the values are sorted.
+		Arrays.sort(sorted, 0, count);
+		int rank = (int) Math.ceil(percentile / 100 * count);
+		return sorted[Math.min(Math.max(rank, 1), count) - 1];
+	}
+	
+	/** @param channel The channel to read.
+	 * @return The value recorded for the channel during the most recently finished frame. */
+	public long getLast(int channel) {
+		if(count == 0) return 0;
+		return values[channel][(head + capacity - 1) % capacity];
+	}
+	
+	/** Draws the 50th, 95th and 99th percentile of every channel, timings in microseconds, one channel per line.
+	 * @param batch The batch to draw with. Must have had begin() called on it.
+	 * @param font The font to draw with.
+	 * @param x Position of the left edge of the text.
+	 * @param y Position of the top edge of the text. */
+	public void drawOverlay(SpriteBatch batch, BitmapFont font, float x, float y) {
+		text.setLength(0);
+		for(int c = 0; c < NUM_CHANNELS; c++) {
+			text.append(NAMES[c]).append(' ');
+			text.append(scale(c, getPercentile(c, 50))).append(" / ");
+			text.append(scale(c, getPercentile(c, 95))).append(" / ");
+			text.append(scale(c, getPercentile(c, 99)));
+			if(TIMED[c]) text.append(" us");
+			text.append('\n');
+		}
+		font.draw(batch, text, x, y);
+	}
+	
+	/** Writes every frame held to a CSV file, oldest first, with a header naming each channel. Timings are in nanoseconds.
+	 * @param file The file to write to. Any existing contents are replaced. */
+	public void writeCsv(FileHandle file) {
+		Writer writer = null;
+		try {
+			writer = file.writer(false);
+			writeCsv(writer);
+		}
+		catch(IOException e) {
+			throw new GdxRuntimeException("Error writing profile to file: " + file, e);
+		}
+		finally {
+			StreamUtils.closeQuietly(writer);
+		}
+	}
+	
+	/** Writes every frame held as CSV, oldest first, with a header naming each channel. Timings are in nanoseconds.
+	 * @param writer The writer to write to. Not closed once finished. */
+	public void writeCsv(Writer writer) throws IOException {
+		for(int c = 0; c < NUM_CHANNELS; c++) {
+			if(c > 0) writer.write(',');
+			writer.write(NAMES[c]);
+		}
+		writer.write('\n');
+		for(int f = 0; f < count; f++) {
+			int row = (head - count + f + capacity) % capacity;
+			for(int c = 0; c < NUM_CHANNELS; c++) {
+				if(c > 0) writer.write(',');
+				writer.write(Long.toString(values[c][row]));
+			}
+			writer.write('\n');
+		}
+	}
+	
+	/** Discards every frame recorded so far. */
+	public void clear() {
+		head = count = 0;
+	}
+	
+	/** @param enabled Whether anything is recorded. Frames already recorded are kept when disabled. */
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+	
+	public boolean isEnabled() {
+		return enabled;
+	}
+	
+	/** @return The number of frames held. */
+	public int size() {
+		return count;
+	}
+	
+	// Converts timings from nanoseconds to microseconds for display.
+	private static long scale(int channel, long value) {
+		return TIMED[channel] ? value / 1000 : value;
+	}
+}
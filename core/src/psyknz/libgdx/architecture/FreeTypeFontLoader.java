@@ -6,23 +6,57 @@ import com.badlogic.gdx.assets.AssetDescriptor;
 import com.badlogic.gdx.assets.AssetLoaderParameters;
 import com.badlogic.gdx.assets.AssetManager;
 import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.TextureData;
 import com.badlogic.gdx.graphics.Texture.TextureFilter;
 import com.badlogic.gdx.graphics.g2d.BitmapFont;
+import com.badlogic.gdx.graphics.g2d.BitmapFont.BitmapFontData;
 import com.badlogic.gdx.graphics.g2d.PixmapPacker;
+import com.badlogic.gdx.graphics.g2d.PixmapPacker.GuillotineStrategy;
+import com.badlogic.gdx.graphics.g2d.PixmapPacker.SkylineStrategy;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
 import com.badlogic.gdx.graphics.g2d.freetype.FreeTypeFontGenerator;
+import com.badlogic.gdx.math.MathUtils;
 import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.ObjectMap;
+import com.badlogic.gdx.utils.async.AsyncExecutor;
+import com.badlogic.gdx.utils.async.AsyncResult;
+import com.badlogic.gdx.utils.async.AsyncTask;
 
-/** {@link AssetLoader} for {@link BitmapFont} instances. Loads the font description file (.fnt) asynchronously, loads the
- * {@link Texture} containing the glyphs as a dependency. The {@link FreeTypeFontParameter} allows you to set things like texture
- * filters or whether to flip the glyphs on the y-axis..
+/** {@link AssetLoader} for {@link BitmapFont} instances generated from .ttf files by FreeType. Glyphs are rasterised and packed
+ * asynchronously, so only uploading the finished glyph pages to the GPU happens on the rendering thread. The
+ * {@link FreeTypeFontParameter} allows you to set things like texture filters or whether to flip the glyphs on the y-axis..
  * @author mzechner */
-public class FreeTypeFontLoader extends AsynchronousAssetLoader<BitmapFont, FreeTypeFontLoader.FreeTypeFontParameter> {
+public class FreeTypeFontLoader extends AsynchronousAssetLoader<BitmapFont, FreeTypeFontLoader.FreeTypeFontParameter>
+		implements Disposable {
 	
-	FreeTypeFontGenerator.FreeTypeFontParameter p; // Native parameter file used to generate FreeType fonts.
+	public static final int DEFAULT_ATLAS_SIZE = 1024; // Default width and height of each page of the shared atlas.
 	
+	private volatile FontCache cache;		// Disk cache generated fonts are saved to and loaded from, or null if fonts are always generated.
+	private volatile PixmapPacker atlas;	// Packer shared by every font loaded without a packer of its own, or null if each has its own.
+	
+	private final AsyncExecutor workers;			// Threads fonts are prefetched on, or null if fonts are only generated by loadAsync.
+	private final ObjectMap<String, FontLoad> loads;	// State of each font being loaded by file name. Guarded by synchronising on it.
+	private final Object packLock = new Object();		// Held while a font is packed into a shared packer. Not the packer itself,
+														// which only needs to be held while a page is uploaded.
+	
+	/** Creates a new FreeTypeFontLoader which only generates fonts when the AssetManager reaches them.
+	 * @param resolver The resolver used to find .ttf files. */
 	public FreeTypeFontLoader(FileHandleResolver resolver) {
+		this(resolver, 0);
+	}
+	
+	/** Creates a new FreeTypeFontLoader.
+	 * @param resolver The resolver used to find .ttf files.
+	 * @param workers The number of fonts which can be generated at once by {@link #prefetch(String, FreeTypeFontParameter)}, or 0 to
+	 * only generate fonts when the AssetManager reaches them. */
+	public FreeTypeFontLoader(FileHandleResolver resolver, int workers) {
 		super(resolver);
-		p = new FreeTypeFontGenerator.FreeTypeFontParameter();
+		this.workers = workers > 0 ? new AsyncExecutor(workers, "FreeTypeFontLoader") : null;
+		loads = new ObjectMap<String, FontLoad>();
 	}
 
 	@SuppressWarnings("rawtypes")
@@ -31,27 +65,259 @@ public class FreeTypeFontLoader extends AsynchronousAssetLoader<BitmapFont, Free
 		return null;
 	}
 
+	/** Starts generating a font on the loader's worker threads. The AssetManager loads one asset at a time, so fonts prefetched as soon
+	 * as they are queued are generated side by side, and loading each one then only waits for its result. Does nothing if the loader
+	 * has no workers or the font is already being loaded with the same parameters. A font prefetched with other parameters is
+	 * discarded. Fonts prefetched but never loaded must be dropped with {@link #release(String)}.
+	 * @param fileName The name of the .ttf file, as passed to the AssetManager.
+	 * @param parameter The parameters the font is loaded with, or null for the defaults. */
+	public void prefetch(String fileName, FreeTypeFontParameter parameter) {
+		if(workers == null) return;
+		final FileHandle file = resolve(fileName);
+		synchronized(loads) {
+			FontLoad old = loads.get(fileName);
+			if(old != null) {
+				if(old.claimed || old.matches(parameter)) return;
+				discard(old); // Prefetched with other parameters, so its result would never be used.
+			}
+			final FontLoad load = new FontLoad(parameter);
+			load.result = workers.submit(new AsyncTask<Void>() {
+				@Override
+				public Void call() {
+					try {
+						generate(file, load);
+					}
+					finally {
+						finish(load);
+					}
+					return null;
+				}
+			});
+			loads.put(fileName, load);
+		}
+	}
+	
+	/** Drops a font which was prefetched but is no longer going to be loaded, such as one unloaded from the AssetManager before it was
+	 * reached, freeing its glyph pages once it has finished generating. Does nothing if the AssetManager has already started loading
+	 * the font.
+	 * @param fileName The name of the .ttf file, as passed to the AssetManager. */
+	public void release(String fileName) {
+		synchronized(loads) {
+			FontLoad load = loads.get(fileName);
+			if(load == null || load.claimed) return;
+			loads.remove(fileName);
+			discard(load);
+		}
+	}
+	
 	@Override
 	public void loadAsync (AssetManager manager, String fileName, FileHandle file, FreeTypeFontParameter parameter) {
-		// Sets the values for the parameter file. If no loader parameter file is passed then the previous parameters are used.
-		if(parameter != null) {
-			p.flip = parameter.flip;
-			p.characters = parameter.characters;
-			p.genMipMaps = parameter.genMipMaps;
-			p.magFilter = parameter.magFilter;
-			p.minFilter = parameter.minFilter;
-			p.packer = parameter.packer;
-			p.size = parameter.size;
+		FontLoad load;
+		synchronized(loads) {
+			load = loads.get(fileName);
+			if(load != null && !load.matches(parameter)) {	// A font prefetched with other parameters is thrown away, since the
+				discard(load);								// AssetManager is loading it differently.
+				load = null;
+			}
+			if(load == null) {
+				load = new FontLoad(parameter);
+				loads.put(fileName, load);
+			}
+			load.claimed = true; // The load now belongs to the AssetManager and is no longer released.
+		}
+		try {
+			if(load.result != null) load.result.get(); // Waits for the font to finish generating if it was prefetched.
+			else generate(file, load);
+		}
+		catch(RuntimeException e) {
+			synchronized(loads) {
+				loads.remove(fileName); // Allows the font to be loaded again.
+				load.dispose();			// Frees any pages packed before generating failed.
+			}
+			throw e;
 		}
 	}
 
 	@Override
 	public BitmapFont loadSync (AssetManager manager, String fileName, FileHandle file, FreeTypeFontParameter parameter) {
-		FreeTypeFontGenerator g = new FreeTypeFontGenerator(file);
-		BitmapFont font = g.generateFont(p); // Generates a new BitmapFont file.
-		g.dispose(); // Disposes of the now used FreeTypeFontGenerator once finished.
+		FontLoad load;
+		synchronized(loads) {
+			load = loads.remove(fileName);
+		}
+		FreeTypeFontGenerator.FreeTypeFontParameter p = load.parameter;
+		
+		Array<TextureRegion> regions = new Array<TextureRegion>();
+		if(load.packer != null) {
+			// Uploads only the pages changed since the packer was last uploaded, so fonts sharing a packer share its textures too.
+			synchronized(load.packer) {
+				load.packer.updateTextureRegions(regions, p.minFilter, p.magFilter, p.genMipMaps);
+			}
+		}
+		for(int i = 0; i < load.pages.size; i++) {
+			Texture texture = new Texture(load.pages.get(i));
+			texture.setFilter(p.minFilter, p.magFilter);
+			regions.add(new TextureRegion(texture));
+		}
+		BitmapFont font;
+		if(load.data instanceof IncrementalFontData) {
+			// Glyphs rasterised from now on add their pages to the same regions the font draws from.
+			((IncrementalFontData) load.data).startRasterising(regions);
+			font = new BitmapFont(load.data, regions, true) {
+				@Override
+				public void dispose() {
+					super.dispose();
+					((IncrementalFontData) getData()).dispose();
+				}
+			};
+		}
+		else font = new BitmapFont(load.data, regions, true);
+		font.setOwnsTexture(load.ownsPages); // Pages of a shared packer belong to whoever created the packer.
 		return font;
 	}
+		
+	// Generates a font or reads it from the cache, doing everything except uploading its pages. Only touches the given load and
+	// shared packers, which are locked while glyphs are packed into them, so several fonts can be generated at once.
+	private void generate(FileHandle file, FontLoad load) {
+		FreeTypeFontGenerator.FreeTypeFontParameter p = load.parameter;
+		
+		// Incremental fonts keep their generator and parameters to rasterise glyphs later, and evicting glyphs frees their pages, so
+		// they always get a packer of their own.
+		if(p.incremental) {
+			p.packer = load.packer = createPacker(p);
+			load.ownsPages = false; // Disposed of along with the font's data instead.
+			FreeTypeFontGenerator g = new FreeTypeFontGenerator(file);
+			try {
+				load.data = g.generateData(p, new IncrementalFontData(g, load.packer, load.maxPages));
+			}
+			catch(RuntimeException e) {
+				g.dispose(); // Only kept once the font's data owns it.
+				load.packer.dispose();
+				load.packer = null;
+				throw e;
+			}
+			return;
+		}
+		
+		// Fonts packed into a shared PixmapPacker share its pages with other fonts, so only fonts with their own pages are cached.
+		PixmapPacker shared = p.packer != null ? p.packer : atlas;
+		FontCache cache = this.cache;
+		load.ownsPages = shared == null;
+		String key = null;
+		if(cache != null && load.ownsPages) {
+			key = cache.getKey(file, p);
+			load.data = cache.readData(key);
+			if(load.data != null) {
+				for(int i = 0; i < load.data.imagePaths.length; i++) {
+					TextureData page = TextureData.Factory.loadFromFile(cache.getPage(key, i), p.genMipMaps);
+					page.prepare(); // Decodes the PNG here rather than on the rendering thread.
+					load.pages.add(page);
+				}
+				return;
+			}
+		}
+		
+		// Packing into a PixmapPacker only touches pixmaps, so everything but uploading the pages can be done off the rendering thread.
+		FreeTypeFontGenerator g = new FreeTypeFontGenerator(file);
+		try {
+			if(shared != null) {
+				// FreeType reads the page a glyph was packed into after packing it, so only one font is packed into shared packers at
+				// a time. PixmapPacker locks itself for each glyph, so uploading pages in loadSync never waits for a whole font.
+				p.packer = load.packer = shared;
+				synchronized(packLock) {
+					load.data = g.generateData(p);
+				}
+			}
+			else {
+				p.packer = load.packer = createPacker(p);
+				load.data = g.generateData(p);
+			}
+		}
+		finally {
+			g.dispose(); // Disposes of the now used FreeTypeFontGenerator once finished, even if generating failed.
+		}
+		
+		if(key != null) {
+			Array<Pixmap> pixmaps = new Array<Pixmap>(load.packer.getPages().size);
+			for(int i = 0; i < load.packer.getPages().size; i++) pixmaps.add(load.packer.getPages().get(i).getPixmap());
+			cache.write(key, load.data, pixmaps);
+		}
+	}
+	
+	// Marks a prefetched font as finished generating, disposing of it if it was discarded while being generated.
+	private void finish(FontLoad load) {
+		synchronized(loads) {
+			load.finished = true;
+			if(load.discarded) load.dispose();
+		}
+	}
+	
+	// Throws away a load which will never reach loadSync. Must hold the loads lock. A font still being generated is disposed of by
+	// finish once its worker is done with it.
+	private void discard(FontLoad load) {
+		load.discarded = true;
+		if(load.finished || load.result == null) load.dispose();
+	}
+		
+	/** Creates a PixmapPacker matching the one {@link FreeTypeFontGenerator} creates for a font with no packer of its own, with
+	 * square pages large enough to hold every character, or pages of the largest size for incremental fonts.
+	 * @param parameter The parameters the font is generated with.
+	 * @return The new PixmapPacker. */
+	static PixmapPacker createPacker(FreeTypeFontGenerator.FreeTypeFontParameter parameter) {
+		int maxSize = FreeTypeFontGenerator.getMaxTextureSize();
+		PixmapPacker packer;
+		if(parameter.incremental) {
+			packer = new PixmapPacker(maxSize, maxSize, Pixmap.Format.RGBA8888, 1, false, new GuillotineStrategy());
+		}
+		else {
+			int area = parameter.size * parameter.size * parameter.characters.length();
+			int pageSize = Math.min(MathUtils.nextPowerOfTwo((int) Math.ceil(Math.sqrt(area))), maxSize);
+			packer = new PixmapPacker(pageSize, pageSize, Pixmap.Format.RGBA8888, 1, false, new SkylineStrategy());
+		}
+		packer.setTransparentColor(parameter.color);
+		packer.getTransparentColor().a = 0;
+		return packer;
+	}
+	
+	/** Sets the disk cache generated fonts are saved to, so later runs of the game load the saved glyph pages instead of generating
+	 * them again. Fonts packed into a shared {@link PixmapPacker}, either their own or the shared atlas, are never cached.
+	 * @param cache The cache to use, or null to always generate fonts. */
+	public void setCache(FontCache cache) {
+		this.cache = cache;
+	}
+	
+	public FontCache getCache() {
+		return cache;
+	}
+	
+	/** Packs every font loaded from now on without a packer of its own into a single shared atlas, so text in different faces and
+	 * sizes can be drawn without the SpriteBatch flushing between them. Glyph pages are added to the atlas as needed and are never
+	 * freed when a font is unloaded, only when the atlas is disposed of by {@link #dispose()}.
+	 * @param pageSize Width and height of each page of the atlas, such as {@link #DEFAULT_ATLAS_SIZE}. */
+	public void useSharedAtlas(int pageSize) {
+		if(atlas != null) return;
+		PixmapPacker packer = new PixmapPacker(pageSize, pageSize, Pixmap.Format.RGBA8888, 1, false, new SkylineStrategy());
+		packer.setTransparentColor(Color.WHITE);
+		packer.getTransparentColor().a = 0;
+		atlas = packer;
+	}
+	
+	/** @return The atlas shared between fonts, or null if each font has its own glyph pages. */
+	public PixmapPacker getSharedAtlas() {
+		return atlas;
+	}
+	
+	/** Stops the loader's worker threads, waiting for any fonts being prefetched, and disposes of the shared atlas. Must only be called
+	 * once every font packed into the atlas has been unloaded. */
+	@Override
+	public void dispose() {
+		if(workers != null) workers.dispose();
+		synchronized(loads) {
+			for(FontLoad load : loads.values()) load.dispose(); // Fonts prefetched but never loaded.
+			loads.clear();
+		}
+		if(atlas != null) atlas.dispose();
+		atlas = null;
+	}
 
 	/** Parameter to be passed to {@link AssetManager#load(String, Class, AssetLoaderParameters)} if additional configuration is
 	 * necessary for the {@link BitmapFont} derived from the {@link FreeTypeFontGenerator}.
@@ -71,5 +337,69 @@ public class FreeTypeFontLoader extends AsynchronousAssetLoader<BitmapFont, Free
 		public TextureFilter minFilter = TextureFilter.Nearest;
 		/** Magnification filter */
 		public TextureFilter magFilter = TextureFilter.Nearest;
+		/** Whether to rasterise characters the first time they are drawn, rather than only the given characters while loading. Incremental
+		 * fonts always have their own glyph pages and are never cached */
+		public boolean incremental = false;
+		/** The number of glyph pages an incremental font may have before every glyph is evicted, or 0 for no limit. Each page takes up 4
+		 * bytes per pixel of the generator's maximum texture size squared */
+		public int maxPages = 0;
+	}
+	
+	// State of a font between being generated, by loadAsync or a worker thread, and its pages being uploaded by loadSync. Each load has
+	// its own parameters, so loads never interfere with each other.
+	static class FontLoad {
+		static final FreeTypeFontParameter DEFAULTS = new FreeTypeFontParameter(); // Parameters of fonts loaded without any.
+		
+		final FreeTypeFontGenerator.FreeTypeFontParameter parameter;	// Parameters the font is generated with.
+		final int maxPages;												// Number of pages an incremental font may have.
+		final PixmapPacker requestedPacker;								// Packer asked for by the asset's parameters, if any.
+		AsyncResult<Void> result;		// Result of generating the font on a worker thread, or null if generated by loadAsync.
+		boolean claimed;				// Whether loadAsync has taken the load, after which only loadSync removes it.
+		boolean finished;				// Whether the worker generating the font is done with it.
+		boolean discarded;				// Whether the load was dropped without reaching loadSync, and must be disposed of.
+		BitmapFontData data;			// Metrics of the font, generated or read from the cache.
+		PixmapPacker packer;			// Packer holding the font's glyphs, or null if its pages were read from the cache.
+		boolean ownsPages;				// Whether the font is the only user of its glyph pages.
+		final Array<TextureData> pages;	// Prepared glyph pages of a font read from the cache.
+		
+		FontLoad(FreeTypeFontParameter parameter) {
+			if(parameter == null) parameter = new FreeTypeFontParameter();
+			this.parameter = new FreeTypeFontGenerator.FreeTypeFontParameter();
+			this.parameter.flip = parameter.flip;
+			this.parameter.characters = parameter.characters;
+			this.parameter.genMipMaps = parameter.genMipMaps;
+			this.parameter.magFilter = parameter.magFilter;
+			this.parameter.minFilter = parameter.minFilter;
+			this.parameter.packer = parameter.packer;
+			this.parameter.size = parameter.size;
+			this.parameter.incremental = parameter.incremental;
+			maxPages = parameter.maxPages;
+			requestedPacker = parameter.packer;
+			pages = new Array<TextureData>();
+		}
+		
+		// Whether the font would be generated the same way with the given parameters.
+		boolean matches(FreeTypeFontParameter other) {
+			if(other == null) other = DEFAULTS;
+			return other.size == parameter.size && other.flip == parameter.flip && other.genMipMaps == parameter.genMipMaps
+					&& other.minFilter == parameter.minFilter && other.magFilter == parameter.magFilter
+					&& other.incremental == parameter.incremental && other.maxPages == maxPages && other.packer == requestedPacker
+					&& (other.characters == null ? parameter.characters == null : other.characters.equals(parameter.characters));
+		}
+		
+		// Frees everything generated for a font which will never be turned into a BitmapFont.
+		void dispose() {
+			if(data instanceof IncrementalFontData) ((IncrementalFontData) data).dispose(); // Along with its packer and generator.
+			else if(packer != null && ownsPages) packer.dispose();
+			for(int i = 0; i < pages.size; i++) {
+				TextureData page = pages.get(i);
+				if(page.isPrepared() && page.getType() == TextureData.TextureDataType.Pixmap && page.disposePixmap()) {
+					page.consumePixmap().dispose();
+				}
+			}
+			pages.clear();
+			data = null;
+			packer = null;
+		}
 	}
 }
\ No newline at end of file
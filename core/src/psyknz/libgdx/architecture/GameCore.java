@@ -1,9 +1,14 @@
 package psyknz.libgdx.architecture;
 
 import com.badlogic.gdx.Game;
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.Screen;
+import com.badlogic.gdx.assets.AssetDescriptor;
 import com.badlogic.gdx.assets.AssetManager;
 import com.badlogic.gdx.assets.loaders.resolvers.InternalFileHandleResolver;
 import com.badlogic.gdx.graphics.g2d.BitmapFont;
+import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+import com.badlogic.gdx.utils.Array;
 
 /** The GameCore class provides all basic boilerplate shared functionality required of a game. This includes custom loaders for .ttf
  * files When creating a new project have the main game file extend this object and override the create method. Ensure you call the
@@ -11,22 +16,134 @@ import com.badlogic.gdx.graphics.g2d.BitmapFont;
  * @author Alex Crowther */
 public class GameCore extends Game {
 	
+	public static final int DEFAULT_LOAD_BUDGET = 8; // Default milliseconds spent loading assets each frame during a transition.
+	
 	public final AssetManager assets; 				// The asset manager used by the game to store all shared resources.
 	public final GoogleServicesResolver services;	// Object allowing platform independent access to Google Play Services.
+	public final FreeTypeFontLoader fontLoader;		// Loader used by the AssetManager to generate fonts from .ttf files.
+	
+	private SpriteBatch batch; // The SpriteBatch shared by every GameScreen. Created the first time it is needed.
+	
+	private GameScreen pendingScreen;			// Screen which will be shown once its assets have loaded.
+	private int loadBudget = DEFAULT_LOAD_BUDGET;	// Milliseconds spent loading assets each frame during a transition.
 	
 	public GameCore(GoogleServicesResolver services) {
 		this.services = services;		// Sets the GoogleServicesResolver this game uses.
 		
 		assets = new AssetManager();	// Initialises the AssetManager and sets all general loaders used in PsyKNZ games.
-		assets.setLoader(BitmapFont.class, ".ttf", new FreeTypeFontLoader(new InternalFileHandleResolver()));
+		// Leaves a core free for the rendering thread while fonts are generated.
+		int workers = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+		fontLoader = new FreeTypeFontLoader(new InternalFileHandleResolver(), workers);
+		assets.setLoader(BitmapFont.class, ".ttf", fontLoader);
+	}
+	
+	/** Saves generated fonts to a cache in local storage where it is available, so fonts are only generated the first time the game
+	 * is run. */
+	@Override
+	public void create() {
+		if(Gdx.files.isLocalStorageAvailable()) fontLoader.setCache(new FontCache(Gdx.files.local("fontcache")));
 	}
 	
+	/** Renders the current screen, then spends up to the load budget loading assets for the pending screen. Once every asset in the
+	 * pending screen's manifest has loaded the game changes to it, and releases the manifest of the screen it replaced. */
 	@Override
-	public void create() {}
+	public void render() {
+		super.render();
+		if(pendingScreen == null) return;
+		
+		assets.update(loadBudget);
+		if(isLoaded(pendingScreen)) {
+			Screen old = getScreen();
+			GameScreen next = pendingScreen;
+			pendingScreen = null;
+			setScreen(next);
+			if(old instanceof GameScreen && old != next) release((GameScreen) old);
+		}
+	}
 	
 	@Override
 	public void dispose() {
 		assets.dispose(); // When the game closes all shared assets are disposed of.
+		fontLoader.dispose(); // Followed by the font atlas they shared, if any.
+		if(batch != null) batch.dispose();
+		batch = null;
+	}
+	
+	/** Changes to a new screen without stalling the current one. The new screen's assets are queued on the AssetManager and loaded a
+	 * little each frame while the current screen keeps rendering, and the screens are changed once every asset has loaded.
+	 * @param screen The screen to change to. Replaces any screen already waiting to be shown. */
+	public void changeScreen(GameScreen screen) {
+		if(pendingScreen != null && pendingScreen != screen) release(pendingScreen);
+		pendingScreen = null;
+		if(screen == getScreen()) return;
+		preload(screen);
+		pendingScreen = screen;
+	}
+	
+	/** Queues every asset in a screen's manifest on the AssetManager so they load ahead of the screen being shown. Fonts in the
+	 * manifest start generating straight away on the font loader's worker threads. Each manifest is only queued once until it is
+	 * released.
+	 * @param screen The screen whose assets should be loaded. */
+	public void preload(GameScreen screen) {
+		if(screen.manifestQueued) return;
+		Array<AssetDescriptor<?>> manifest = screen.getManifest();
+		for(int i = 0; i < manifest.size; i++) {
+			AssetDescriptor<?> asset = manifest.get(i);
+			if(asset.type == BitmapFont.class && asset.fileName.endsWith(".ttf") && !assets.isLoaded(asset.fileName)) {
+				fontLoader.prefetch(asset.fileName, (FreeTypeFontLoader.FreeTypeFontParameter) asset.params);
+			}
+			assets.load(asset);
+		}
+		screen.manifestQueued = true;
+	}
+	
+	/** Unloads every asset in a screen's manifest which was queued by {@link #preload(GameScreen)}. The AssetManager counts references,
+	 * so assets shared with other screens stay loaded. Called automatically for the screen replaced by a transition.
+	 * @param screen The screen whose assets are no longer needed. */
+	public void release(GameScreen screen) {
+		if(!screen.manifestQueued) return;
+		Array<AssetDescriptor<?>> manifest = screen.getManifest();
+		for(int i = 0; i < manifest.size; i++) {
+			String fileName = manifest.get(i).fileName;
+			assets.unload(fileName);
+			if(!assets.contains(fileName)) fontLoader.release(fileName); // Drops fonts prefetched but unloaded before being reached.
+		}
+		screen.manifestQueued = false;
+	}
+	
+	/** @param screen The screen to check.
+	 * @return True if every asset in the screen's manifest has been loaded. */
+	public boolean isLoaded(GameScreen screen) {
+		Array<AssetDescriptor<?>> manifest = screen.getManifest();
+		for(int i = 0; i < manifest.size; i++) {
+			if(!assets.isLoaded(manifest.get(i).fileName, manifest.get(i).type)) return false;
+		}
+		return true;
+	}
+	
+	/** @return The screen which will be shown once its assets have loaded, or null if no transition is in progress. */
+	public GameScreen getPendingScreen() {
+		return pendingScreen;
+	}
+	
+	/** Sets how long is spent loading assets each frame during a transition. Larger budgets load faster but make the current screen
+	 * stutter while it waits.
+	 * @param loadBudget Milliseconds spent loading assets each frame. */
+	public void setLoadBudget(int loadBudget) {
+		this.loadBudget = Math.max(1, loadBudget);
+	}
+	
+	public int getLoadBudget() {
+		return loadBudget;
+	}
+	
+	/** Gets the SpriteBatch shared by every {@link GameScreen}, so changing screens does not rebuild its mesh and shader. The batch is
+	 * owned by the GameCore and disposed of along with it, so screens must never dispose of it themselves. Screens which change its
+	 * state, such as its shader or blend function, should expect it to be reset when the next screen is shown.
+	 * @return The shared SpriteBatch. Must not be called before {@link #create()}, since the batch needs an OpenGL context. */
+	public SpriteBatch getBatch() {
+		if(batch == null) batch = new SpriteBatch();
+		return batch;
 	}
 
 }
@@ -10,12 +10,12 @@ import com.badlogic.gdx.math.Rectangle;
 public interface GameElement {
 	
 	/** The update function is called by a {@link GameScreen} to update the Renderable's game logic. Renderable must be added to
-	 * the GameScreen's elements {@link Array}.
+	 * the GameScreen's {@link ElementRegistry}.
 	 * @param delta The time in milliseconds since the last rendering cycle was completed. */
 	public void update(float delta);
 	
 	/** The draw function is called by a {@link GameScreen} to draw the Renderable to the screen. Renderable must be added to
-	 * the GameScreen's elements {@link Array}. 
+	 * the GameScreen's {@link ElementRegistry}.
 	 * @param batch The {@link SpriteBatch} being used to draw this renderable to the screen. */
 	public void draw(SpriteBatch batch, Rectangle drawArea);
 
@@ -1,13 +1,26 @@
 package psyknz.libgdx.architecture;
 
+import com.badlogic.gdx.utils.Pool.Poolable;
 
-/** Object which represents an in-game event. Contains details about the event and its source * 
+/** Object which represents an in-game event. Contains details about the event and its source. Events are routed by an
+ * {@link EventBus} according to their class, so each kind of event should be its own subclass. Subclasses need a public no-argument
+ * constructor to be pooled, and should clear their fields in {@link #reset()}. *
  * @author Alex Crowther */
-public class GameEvent {
+public class GameEvent implements Poolable {
 
-	public final String id; // The source of the GameEvent
+	public String id; // The source of the GameEvent
+	
+	boolean pooled; // Whether the event was obtained from a pool by an EventBus and is returned to it once dispatched.
+	
+	public GameEvent() {}
 	
 	public GameEvent(String id) {
 		this.id = id;
 	}
+	
+	/** Clears the event when it is returned to its pool. Subclasses overriding this should call super.reset(). */
+	@Override
+	public void reset() {
+		id = null;
+	}
 }
@@ -6,11 +6,14 @@ import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.Screen;
 import com.badlogic.gdx.InputMultiplexer;
 import com.badlogic.gdx.InputAdapter;
+import com.badlogic.gdx.assets.AssetDescriptor;
+import com.badlogic.gdx.assets.AssetLoaderParameters;
 import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.GL20;
 import com.badlogic.gdx.graphics.OrthographicCamera;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
 import com.badlogic.gdx.math.Rectangle;
+import com.badlogic.gdx.utils.Array;
 
 /** The GameScreen class implements all the boiler plate code required to produce a libGDX {@link Screen} which is able to display
  * 2D graphics, access a shared asset manager, process in-game events, and pass user generated events to objects extending the
@@ -18,17 +21,26 @@ import com.badlogic.gdx.math.Rectangle;
  * @author Alex Crowther */
 public class GameScreen extends InputAdapter implements Screen, GameElement, GameEventListener {
 	
+	public static final int VARIABLE_STEP = 0;	// Logic is updated once per render using the time since the last render.
+	public static final int FIXED_STEP = 1;		// Logic is updated in constant sized steps, as many as have elapsed since the last render.
+	
+	public static final float DEFAULT_TICK_RATE = 60;	// Default number of fixed steps per second.
+	public static final int DEFAULT_MAX_STEPS = 5;		// Default maximum number of fixed steps per render.
+	
 	protected GameCore game; // Reference to the GameCore object managing this Screen.
 	
 	protected InputMultiplexer input; // The InputMultiplexer used by the screen to process user generated events.
 	
 	public Color bgColor = new Color(0, 0, 0, 1); // Color used to clear the screen each render call.
 	
-	protected SpriteBatch batch; // The SpriteBatch used to draw all 2D graphics.
+	protected SpriteBatch batch; // The SpriteBatch used to draw all 2D graphics. Shared with every other screen and owned by the GameCore.
 	
 	private Rectangle viewport; // Rectangular region of the game that's currently visible.
 	
-	public GameScreen nextScreen; // The next GameScreen which should be loaded by the game.
+	public GameScreen nextScreen; // The next GameScreen which should be loaded by the game. Shown once its assets have loaded.
+	
+	private final Array<AssetDescriptor<?>> manifest = new Array<AssetDescriptor<?>>(); // Assets which must be loaded before the screen is shown.
+	boolean manifestQueued; // Whether the manifest has been queued on the GameCore's AssetManager and not yet released.
 	
 	protected OrthographicCamera camera; // The camera used to display the 2D game space.
 	
@@ -36,6 +48,23 @@ public class GameScreen extends InputAdapter implements Screen, GameElement, Gam
 	
 	public float viewSize = Gdx.graphics.getHeight(); // The size that the viewArea should be. By default the smallest edge should be 480 in-game units.
 	
+	public final ElementRegistry elements = new ElementRegistry(); // The GameElements updated and drawn by this screen.
+	
+	protected final RenderQueue queue = new RenderQueue(); // Sprites submitted while drawing, sorted by texture and drawn at the end.
+	
+	public final FrameProfiler profiler = new FrameProfiler(); // Times each phase of render. Disabled until setEnabled(true) is called.
+	
+	public final EventBus events = new EventBus(); // Routes GameEvents between the screen's objects. Queued events are dispatched each render.
+	
+	public final UIAnimator animator = new UIAnimator(); // Animates the screen's UIFeatures. Advanced once each render after the update.
+	
+	private int stepMode = VARIABLE_STEP;			// How the time since the last render is turned into calls to update.
+	private float stepTime = 1 / DEFAULT_TICK_RATE;	// Length of each fixed step in seconds.
+	private int maxSteps = DEFAULT_MAX_STEPS;		// Maximum number of fixed steps per render.
+	private float accumulator;						// Time which has elapsed but not yet been simulated by a fixed step.
+	private float alpha = 1;						// How far between the last two fixed steps the current render falls.
+	private int renderCalls;						// Number of draw calls the SpriteBatch made during the last render.
+	
 	/** Creates a new GameScreen and initialises all non-OpenGL features. 
 	 * @param game Reference to the {@link GameCore} object managing this screen. */
 	public GameScreen(GameCore game) {
@@ -45,37 +74,94 @@ public class GameScreen extends InputAdapter implements Screen, GameElement, Gam
 	
 	@Override
 	public void show() {
-		batch = new SpriteBatch(); // Creates a new SpriteBatch to use each time the screen is shown.
+		// Borrows the game's shared SpriteBatch and resets any state the previous screen may have left on it.
+		batch = game.getBatch();
+		batch.setShader(null);
+		batch.setColor(Color.WHITE);
+		batch.enableBlending();
+		batch.setBlendFunction(GL20.GL_SRC_ALPHA, GL20.GL_ONE_MINUS_SRC_ALPHA);
 		Gdx.input.setInputProcessor(input); // Registers the GameScreen's InputMultiplexer as the input device when the screen is shown.
 	}
 	
 	@Override
 	public void render(float delta) {
+		profiler.beginFrame();
+		
 		// Clears the screen using the currently set bgColor.
 		Gdx.gl.glClearColor(bgColor.r, bgColor.g, bgColor.b, bgColor.a);
 		Gdx.gl.glClear(GL20.GL_COLOR_BUFFER_BIT);
 		
+		// Dispatches the events queued since the last render before the game logic reacts to them.
+		events.drain();
+		
 		// Updates the game logic for all Renderable's in the GameScreen.
-		update(delta);
+		profiler.begin(FrameProfiler.UPDATE);
+		if(stepMode == FIXED_STEP) {
+			accumulator += delta;
+			int steps = 0;
+			while(accumulator >= stepTime && steps < maxSteps) {
+				update(stepTime);
+				accumulator -= stepTime;
+				steps++;
+			}
+			if(accumulator >= stepTime) accumulator %= stepTime; // Time beyond the step cap is dropped so slow frames can't snowball.
+			alpha = accumulator / stepTime;
+		}
+		else {
+			update(delta);
+			alpha = 1;
+		}
+		animator.update(delta); // UI animations follow real time and set each animated feature's bounds once per render.
+		profiler.end(FrameProfiler.UPDATE);
 		
 		// Draws the screen and all the GameElements it's managing to the screen.
+		profiler.begin(FrameProfiler.DRAW);
 		batch.setProjectionMatrix(camera.combined);
 		batch.begin();
-		draw(batch, getViewport());
+		draw(batch, getViewport(), alpha);
+		profiler.end(FrameProfiler.DRAW);
+		profiler.begin(FrameProfiler.FLUSH);
+		queue.flush(batch); // Queued sprites are drawn over everything drawn directly, with as few texture switches as possible.
+		profiler.end(FrameProfiler.FLUSH);
+		profiler.begin(FrameProfiler.BATCH_END);
 		batch.end();
+		profiler.end(FrameProfiler.BATCH_END);
+		renderCalls = batch.renderCalls;
+		profiler.record(FrameProfiler.RENDER_CALLS, batch.renderCalls);
+		profiler.record(FrameProfiler.TOTAL_RENDER_CALLS, batch.totalRenderCalls);
+		profiler.endFrame();
 		
-		// Changes to the next screen if one has been declared.
-		if(nextScreen != null) game.setScreen(nextScreen);
+		// Starts loading the next screen if one has been declared. This screen keeps rendering until the next screen's assets have loaded.
+		if(nextScreen != null) {
+			game.changeScreen(nextScreen);
+			nextScreen = null;
+		}
 	}
 	
 	@Override
 	public void CallEvent(GameEvent e) {}
 	
+	/** Updates every element in the screen's {@link ElementRegistry}. Subclasses overriding this should call super.update(delta). */
 	@Override
-	public void update(float delta) {}
+	public void update(float delta) {
+		elements.update(delta);
+	}
 	
+	/** Draws every element in the screen's {@link ElementRegistry} which is inside the drawArea. Subclasses overriding this should
+	 * call super.draw(batch, drawArea) wherever the elements should be drawn. */
 	@Override
-	public void draw(SpriteBatch batch, Rectangle drawArea) {}
+	public void draw(SpriteBatch batch, Rectangle drawArea) {
+		elements.draw(batch, drawArea);
+	}
+	
+	/** Called by render to draw the screen. Using the FIXED_STEP mode, positions can be interpolated between the previous and current
+	 * step so movement looks smooth whatever the frame rate. By default calls {@link #draw(SpriteBatch, Rectangle)}.
+	 * @param batch The {@link SpriteBatch} being used to draw the screen.
+	 * @param drawArea The area of the game currently visible.
+	 * @param alpha How far between the previous and current step the render falls, from 0 to 1. Always 1 using VARIABLE_STEP. */
+	public void draw(SpriteBatch batch, Rectangle drawArea, float alpha) {
+		draw(batch, drawArea);
+	}
 	
 	@Override
 	public void resize(int width, int height) {
@@ -114,7 +200,8 @@ public class GameScreen extends InputAdapter implements Screen, GameElement, Gam
 	
 	@Override
 	public void dispose() {
-		batch.dispose(); // Disposes of the SpriteBatch if this screen loses focus.
+		queue.clear(); // The SpriteBatch is owned by the GameCore, so the screen only lets go of it.
+		batch = null;
 	}
 	
 	/** Gets an up to date representation of the GameScreens viewport.
@@ -127,6 +214,78 @@ public class GameScreen extends InputAdapter implements Screen, GameElement, Gam
 		return viewport;
 	}
 	
+	/** Sets how the time since the last render is turned into calls to {@link #update(float)}. Using FIXED_STEP, update is called
+	 * with a constant delta as many times as needed to catch up with real time, so game logic costs the same however fast the screen
+	 * renders, and a slow frame cannot produce one huge step.
+	 * @param stepMode One of {@link #VARIABLE_STEP} or {@link #FIXED_STEP}. */
+	public void setStepMode(int stepMode) {
+		if(stepMode != VARIABLE_STEP && stepMode != FIXED_STEP) throw new IllegalArgumentException("Unknown step mode: " + stepMode);
+		this.stepMode = stepMode;
+		accumulator = 0;
+	}
+	
+	public int getStepMode() {
+		return stepMode;
+	}
+	
+	/** @param tickRate Number of fixed steps per second used by the FIXED_STEP mode. */
+	public void setTickRate(float tickRate) {
+		if(tickRate <= 0) throw new IllegalArgumentException("Tick rate must be greater than zero: " + tickRate);
+		stepTime = 1 / tickRate;
+	}
+	
+	public float getTickRate() {
+		return 1 / stepTime;
+	}
+	
+	/** Sets the most fixed steps which will be run in a single render. If the game falls further behind than this the extra time is
+	 * dropped and the game runs slower than real time, rather than each render taking longer to catch up than the last.
+	 * @param maxSteps Maximum number of fixed steps per render. */
+	public void setMaxSteps(int maxSteps) {
+		if(maxSteps < 1) throw new IllegalArgumentException("Max steps must be at least one: " + maxSteps);
+		this.maxSteps = maxSteps;
+	}
+	
+	public int getMaxSteps() {
+		return maxSteps;
+	}
+	
+	/** @return How far between the previous and current fixed step the last render fell, from 0 to 1. */
+	public float getAlpha() {
+		return alpha;
+	}
+	
+	/** @return The {@link RenderQueue} elements can submit sprites to while being drawn, to reduce the number of draw calls. */
+	public RenderQueue getRenderQueue() {
+		return queue;
+	}
+	
+	/** @return The number of draw calls the SpriteBatch made during the last render. Each texture switch costs a draw call. */
+	public int getRenderCalls() {
+		return renderCalls;
+	}
+	
+	/** Adds an asset to the screen's manifest. Every asset in the manifest is loaded by the {@link GameCore} before the screen is
+	 * shown, so should be declared in the screen's constructor.
+	 * @param fileName The file name of the asset.
+	 * @param type The class of the asset. */
+	protected <T> void require(String fileName, Class<T> type) {
+		manifest.add(new AssetDescriptor<T>(fileName, type));
+	}
+	
+	/** Adds an asset to the screen's manifest, loaded with the given parameters.
+	 * @param fileName The file name of the asset.
+	 * @param type The class of the asset.
+	 * @param parameters The parameters passed to the asset's loader. */
+	protected <T> void require(String fileName, Class<T> type, AssetLoaderParameters<T> parameters) {
+		manifest.add(new AssetDescriptor<T>(fileName, type, parameters));
+	}
+	
+	/** @return The assets which must be loaded before the screen is shown. */
+	public Array<AssetDescriptor<?>> getManifest() {
+		return manifest;
+	}
+	
 	public OrthographicCamera getCamera() {
 		return camera;
 	}
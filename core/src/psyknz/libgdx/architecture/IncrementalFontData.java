@@ -0,0 +1,145 @@
+package psyknz.libgdx.architecture;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.g2d.BitmapFont.BitmapFontData;
+import com.badlogic.gdx.graphics.g2d.BitmapFont.Glyph;
+import com.badlogic.gdx.graphics.g2d.BitmapFontCache;
+import com.badlogic.gdx.graphics.g2d.GlyphLayout;
+import com.badlogic.gdx.graphics.g2d.GlyphLayout.GlyphRun;
+import com.badlogic.gdx.graphics.g2d.PixmapPacker;
+import com.badlogic.gdx.graphics.g2d.PixmapPacker.Page;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.graphics.g2d.freetype.FreeTypeFontDataAccess;
+import com.badlogic.gdx.graphics.g2d.freetype.FreeTypeFontGenerator;
+import com.badlogic.gdx.graphics.g2d.freetype.FreeTypeFontGenerator.FreeTypeBitmapFontData;
+import com.badlogic.gdx.utils.Array;
+
+/** Glyph data of a font loaded incrementally by the {@link FreeTypeFontLoader}. Only the characters asked for up front are rasterised
+ * while the font loads, and any other character is rasterised by FreeType the first time it is drawn and added to the font's glyph
+ * pages, so large character sets cost nothing until they are used. When the font has more glyph pages than its limit the next
+ * layout evicts every glyph and frees the pages, and glyphs are rasterised again as they are drawn, so only glyphs in recent use
+ * take up memory. Text laid out before an eviction, such as a {@link GlyphLayout} or {@link BitmapFontCache} kept between frames,
+ * still refers to the freed pages and needs laying out again, which can be detected with {@link #getEvictions()}.
+ * @author Alex Crowther */
+public class IncrementalFontData extends FreeTypeBitmapFontData {
+	
+	private final FreeTypeFontGenerator generator;	// Generator kept alive to rasterise glyphs as they are needed.
+	private final PixmapPacker packer;				// Packer the font's glyph pages are allocated from. Owned by this font.
+	private final int maxPages;						// Number of glyph pages allowed before every glyph is evicted, or 0 for no limit.
+	private boolean rasterising;					// Whether missing glyphs are rasterised, which only happens once the font is uploaded.
+	
+	private final Array<Page> retired;	// Pages freed by the last eviction, which may still be drawn during the frame it happened.
+	private long retiredFrame;			// Frame the retired pages were freed during.
+	private int evictions;				// Number of times every glyph has been evicted.
+	
+	/** Creates new empty IncrementalFontData, to be filled by {@link FreeTypeFontGenerator#generateData(FreeTypeFontGenerator.FreeTypeFontParameter,
+	 * FreeTypeBitmapFontData)} with the generator's incremental parameter set. Glyphs missing from the font are only rasterised once
+	 * its pages have been uploaded and {@link #startRasterising(Array)} is called.
+	 * @param generator The generator the font's glyphs are rasterised with. Disposed of along with the font.
+	 * @param packer The packer the font's glyphs are packed into. Must not be shared with any other font.
+	 * @param maxPages The number of glyph pages allowed before every glyph is evicted, or 0 for no limit. */
+	public IncrementalFontData(FreeTypeFontGenerator generator, PixmapPacker packer, int maxPages) {
+		this.generator = generator;
+		this.packer = packer;
+		this.maxPages = maxPages;
+		retired = new Array<Page>();
+	}
+	
+	/** Lets glyphs missing from the font be rasterised as they are drawn. Must be called on the rendering thread, since rasterising a
+	 * glyph onto a new page uploads the page.
+	 * @param regions The uploaded glyph pages the font draws from, which pages added later are appended to. */
+	public void startRasterising(Array<TextureRegion> regions) {
+		this.regions = regions;
+		rasterising = true;
+	}
+	
+	/** Rasterises the character if it is missing from the font, once the font has started rasterising. Until then only glyphs already
+	 * in the font are returned, since FreeType uploads a glyph's page as soon as the font has regions, and looks the glyph up in them
+	 * while it has none. A font generated without a space among its characters gets a blank space, as a font loaded all at once does. */
+	@Override
+	public Glyph getGlyph(char ch) {
+		if(rasterising) return super.getGlyph(ch);
+		Glyph[][] table = ((BitmapFontData) this).glyphs;
+		int pageSize = 0x10000 / table.length;
+		Glyph[] page = table[ch / pageSize];
+		return page == null ? null : page[ch % pageSize];
+	}
+	
+	/** Evicts every glyph before laying out the text if the font is over its page limit, then lays out the text, rasterising any
+	 * glyphs not yet on the font's pages. */
+	@Override
+	public void getGlyphs(GlyphRun run, CharSequence str, int start, int end, Glyph lastGlyph) {
+		if(retired.size > 0 && Gdx.graphics.getFrameId() != retiredFrame) disposeRetired();
+		if(maxPages > 0 && packer.getPages().size > maxPages) evict();
+		super.getGlyphs(run, str, start, end, lastGlyph);
+	}
+	
+	/** @return The number of glyphs currently held by the font, including glyphs without an image such as the space. Stays bounded
+	 * however many times the font's glyphs are evicted and rasterised again. */
+	public int getGlyphCount() {
+		Array<Glyph> glyphs = FreeTypeFontDataAccess.getGlyphs(this);
+		return glyphs == null ? 0 : glyphs.size;
+	}
+	
+	/** @return The number of times every glyph has been evicted. Text laid out before the count last changed must be laid out again. */
+	public int getEvictions() {
+		return evictions;
+	}
+	
+	/** Disposes of the font's glyph pages and its generator. */
+	@Override
+	public void dispose() {
+		super.dispose();
+		disposeRetired();
+		generator.dispose();
+	}
+	
+	/** Removes every glyph with an image from the font and frees the pages they were packed into, as happens automatically when the
+	 * font goes over its page limit. Glyphs are rasterised again as they are drawn. The pages are only disposed of once the frame
+	 * ends, since sprites drawn from them earlier in the frame may not have been flushed from the batch yet. */
+	public void evict() {
+		disposeRetired();
+		retired.addAll(packer.getPages());
+		retiredFrame = Gdx.graphics.getFrameId();
+		packer.getPages().clear();
+		regions.clear();
+		
+		// Glyphs without an image, such as the space, are never drawn from a page so they are kept.
+		Glyph[][] table = ((BitmapFontData) this).glyphs;
+		for(int p = 0; p < table.length; p++) {
+			if(table[p] == null) continue;
+			for(int i = 0; i < table[p].length; i++) {
+				Glyph glyph = table[p][i];
+				if(glyph == null) continue;
+				if(glyph.width > 0 && glyph.height > 0) table[p][i] = null;
+				else glyph.page = 0;
+			}
+		}
+		
+		// FreeType also keeps every glyph it rasterises in a list new glyphs are kerned against, which would otherwise grow with every
+		// eviction, making memory and the cost of each new glyph grow without bound.
+		Array<Glyph> rasterised = FreeTypeFontDataAccess.getGlyphs(this);
+		if(rasterised != null) {
+			int kept = 0;
+			for(int i = 0; i < rasterised.size; i++) {
+				Glyph glyph = rasterised.get(i);
+				if(glyph.width <= 0 || glyph.height <= 0) rasterised.set(kept++, glyph); // Only glyphs without an image are kept.
+			}
+			rasterised.truncate(kept);
+		}
+		Glyph missing = missingGlyph;
+		missingGlyph = null;
+		if(missing != null) missingGlyph = getGlyph((char) missing.id); // Rasterised straight away so the font always has a page.
+		evictions++;
+	}
+	
+	// Disposes of the pages freed by the last eviction. The texture of a page disposes of its pixmap along with it.
+	private void disposeRetired() {
+		for(int i = 0; i < retired.size; i++) {
+			Page page = retired.get(i);
+			if(page.getTexture() != null) page.getTexture().dispose();
+			else page.getPixmap().dispose();
+		}
+		retired.clear();
+	}
+}
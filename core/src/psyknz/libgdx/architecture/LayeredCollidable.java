@@ -0,0 +1,15 @@
+package psyknz.libgdx.architecture;
+
+/** Extension of {@link Collidable} for objects which need their own collision layers rather than those of the group they belong to.
+ * Only used by a {@link CollisionSystem} created with layers enabled, where a pair collides only if each one's category bits share
+ * a bit with the other's mask bits.
+ * @author Alex Crowther */
+public interface LayeredCollidable extends Collidable {
+	
+	/** @return Bits identifying the layers this Collidable belongs to. Read once at the start of every update. */
+	public int getCategoryBits();
+	
+	/** @return Bits identifying the layers this Collidable collides with. Read once at the start of every update. */
+	public int getMaskBits();
+	
+}
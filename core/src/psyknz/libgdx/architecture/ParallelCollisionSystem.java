@@ -0,0 +1,117 @@
+package psyknz.libgdx.architecture;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import com.badlogic.gdx.utils.Array;
+
+/** {@link CollisionSystem} which searches for overlapping pairs on a {@link ForkJoinPool}. Each rule is split into batches by range
+ * of colliders, which for the SWEEP_AND_PRUNE broadphase are strips along the x-axis, and every batch is searched as a separate task
+ * into its own buffer. Bounding boxes are still read and collisions still dispatched on the calling thread, in the same order a
+ * single threaded CollisionSystem would use, so {@link Collidable} implementations do not need to be thread safe. Not available
+ * when targeting HTML5.
+ * @author Alex Crowther */
+public class ParallelCollisionSystem extends CollisionSystem {
+	
+	public static final int DEFAULT_MIN_BATCH_SIZE = 256;	// Default smallest number of colliders searched from by a single task.
+	
+	private final ForkJoinPool pool;	// Pool the searches are run on.
+	private int minBatchSize;			// Smallest number of colliders searched from by a single task.
+	
+	private final Array<SearchTask> tasks;	// Reusable tasks, one for each batch searched this update.
+	private final SearchAllTask root;		// Task which forks the search of every batch and waits for them to finish.
+	
+	/** Creates a new ParallelCollisionSystem with the default group and rule.
+	 * @param pool The pool searches are run on. */
+	public ParallelCollisionSystem(ForkJoinPool pool) {
+		this(pool, true, SPATIAL_HASH);
+	}
+	
+	/** Creates a new ParallelCollisionSystem.
+	 * @param pool The pool searches are run on.
+	 * @param createDefaults Whether the {@link #DEFAULT_GROUP} and a rule colliding it with itself should be created.
+	 * @param broadphase One of {@link #BRUTE_FORCE}, {@link #SPATIAL_HASH} or {@link #SWEEP_AND_PRUNE}. */
+	public ParallelCollisionSystem(ForkJoinPool pool, boolean createDefaults, int broadphase) {
+		this(pool, createDefaults, broadphase, false);
+	}
+	
+	/** Creates a new ParallelCollisionSystem.
+	 * @param pool The pool searches are run on.
+	 * @param createDefaults Whether the {@link #DEFAULT_GROUP} and a rule colliding it with itself should be created.
+	 * @param broadphase One of {@link #BRUTE_FORCE}, {@link #SPATIAL_HASH} or {@link #SWEEP_AND_PRUNE}.
+	 * @param useLayers Whether pairs are filtered by layer bits rather than searched rule by rule. */
+	public ParallelCollisionSystem(ForkJoinPool pool, boolean createDefaults, int broadphase, boolean useLayers) {
+		super(createDefaults, broadphase, useLayers);
+		this.pool = pool;
+		minBatchSize = DEFAULT_MIN_BATCH_SIZE;
+		tasks = new Array<SearchTask>();
+		root = new SearchAllTask();
+	}
+	
+	@Override
+	void findPairs() {
+		// Each rule is split into enough batches to keep every thread busy, unless that would make the batches too small.
+		int maxBatches = pool.getParallelism() * 4;
+		for(int r = 0; r < rules.size; r++) {
+			int work = rules.get(r).workSize();
+			int numBatches = Math.max(1, Math.min(maxBatches, work / minBatchSize));
+			for(int n = 0; n < numBatches; n++) {
+				addBatch(rules.get(r), (int) ((long) work * n / numBatches), (int) ((long) work * (n + 1) / numBatches));
+			}
+		}
+		
+		if(getNumBatches() == 1) getBatch(0).find(); // A single batch is searched directly rather than handed to the pool.
+		else if(getNumBatches() > 1) {
+			while(tasks.size < getNumBatches()) tasks.add(new SearchTask());
+			root.reinitialize();
+			pool.invoke(root);
+		}
+	}
+	
+	/** Sets the smallest number of colliders a single task will search from. Rules with fewer colliders than this are searched by a
+	 * single task, since the overhead of splitting them outweighs the gain.
+	 * @param minBatchSize Smallest number of colliders searched from by a single task. */
+	public void setMinBatchSize(int minBatchSize) {
+		this.minBatchSize = Math.max(1, minBatchSize);
+	}
+	
+	public int getMinBatchSize() {
+		return minBatchSize;
+	}
+	
+	public ForkJoinPool getPool() {
+		return pool;
+	}
+	
+	// Searches a single batch for overlapping pairs.
+	private class SearchTask extends RecursiveAction {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private CollisionSystem.PairBatch batch; // The batch being searched.
+		
+		@Override
+		protected void compute() {
+			batch.find();
+		}
+	}
+	
+	// Forks a task for every batch added this update and waits for them all to finish.
+	private class SearchAllTask extends RecursiveAction {
+		
+		private static final long serialVersionUID = 1L;
+		
+		@Override
+		protected void compute() {
+			int numBatches = getNumBatches();
+			for(int n = 1; n < numBatches; n++) {
+				SearchTask task = tasks.get(n);
+				task.reinitialize();
+				task.batch = getBatch(n);
+				task.fork();
+			}
+			getBatch(0).find(); // The first batch is searched on this thread while the others are picked up by the pool.
+			for(int n = numBatches - 1; n > 0; n--) tasks.get(n).join();
+		}
+	}
+}
@@ -0,0 +1,169 @@
+package psyknz.libgdx.architecture;
+
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.utils.ObjectIntMap;
+
+/** Queue of sprites to be drawn by a {@link SpriteBatch}, sorted so that sprites sharing a texture are drawn together. A SpriteBatch
+ * has to flush everything it has batched whenever the texture changes, so drawing sprites in whatever order they are submitted can
+ * cost a draw call per sprite. Each sprite is given a layer, and the queue draws layers from lowest to highest. Within a layer
+ * sprites are grouped by texture and otherwise drawn in the order they were submitted, so sprites which need to overlap in a
+ * particular order should be given different layers. Sorting is done with a radix sort on packed long keys and nothing is allocated
+ * once the queue has warmed up.
+ * @author Alex Crowther */
+public class RenderQueue {
+	
+	public static final int MIN_LAYER = Short.MIN_VALUE;	// Lowest layer a sprite can be drawn on.
+	public static final int MAX_LAYER = Short.MAX_VALUE;	// Highest layer a sprite can be drawn on.
+	
+	private int size;									// Number of sprites submitted since the queue was last flushed.
+	private TextureRegion[] regions;					// Region drawn by each sprite.
+	private float[] x, y, width, height, rotation;		// Position, size and rotation about its centre of each sprite.
+	private float[] colors;								// Packed tint of each sprite.
+	private long[] keys, sortBuffer;					// Sort key of each sprite, packing its layer, texture and submission order.
+	private final int[] counts;							// Histogram of the digit being sorted on by each radix sort pass.
+	
+	private final ObjectIntMap<Texture> textureIds;	// Number given to each texture submitted since the last flush.
+	private int numFlushed;							// Number of sprites drawn by the last flush.
+	
+	/** Creates a new empty RenderQueue. */
+	public RenderQueue() {
+		ensureCapacity(64);
+		counts = new int[256];
+		textureIds = new ObjectIntMap<Texture>();
+	}
+	
+	/** Submits a sprite to be drawn untinted and unrotated on the next flush.
+	 * @param region The region of a texture to draw.
+	 * @param x Position of the left edge of the sprite.
+	 * @param y Position of the bottom edge of the sprite.
+	 * @param width Width of the sprite.
+	 * @param height Height of the sprite.
+	 * @param layer Layer to draw the sprite on, between {@link #MIN_LAYER} and {@link #MAX_LAYER}. */
+	public void draw(TextureRegion region, float x, float y, float width, float height, int layer) {
+		draw(region, x, y, width, height, 0, Color.WHITE_FLOAT_BITS, layer);
+	}
+	
+	/** Submits a sprite to be drawn on the next flush.
+	 * @param region The region of a texture to draw.
+	 * @param x Position of the left edge of the sprite.
+	 * @param y Position of the bottom edge of the sprite.
+	 * @param width Width of the sprite.
+	 * @param height Height of the sprite.
+	 * @param rotation Angle in degrees to rotate the sprite counter-clockwise about its centre.
+	 * @param color Packed tint to draw the sprite with, as returned by {@link Color#toFloatBits()}.
+	 * @param layer Layer to draw the sprite on, between {@link #MIN_LAYER} and {@link #MAX_LAYER}. */
+	public void draw(TextureRegion region, float x, float y, float width, float height, float rotation, float color, int layer) {
+		if(layer < MIN_LAYER || layer > MAX_LAYER) throw new IllegalArgumentException("Layer out of range: " + layer);
+		ensureCapacity(size + 1);
+		
+		// Textures are numbered in the order they are first submitted, which is enough to group sprites sharing a texture.
+		Texture texture = region.getTexture();
+		int textureId = textureIds.get(texture, -1);
+		if(textureId < 0) {
+			textureId = textureIds.size;
+			textureIds.put(texture, textureId);
+		}
+		
+		int i = size++;
+		regions[i] = region;
+		this.x[i] = x;
+		this.y[i] = y;
+		this.width[i] = width;
+		this.height[i] = height;
+		this.rotation[i] = rotation;
+		colors[i] = color;
+		keys[i] = (long) (layer - MIN_LAYER) << 48 | (long) (textureId & 0xFFFF) << 32 | i;
+	}
+	
+	/** Sorts the submitted sprites and draws them with the given batch, then empties the queue.
+	 * @param batch The batch to draw the sprites with. Must have had begin() called on it. */
+	public void flush(SpriteBatch batch) {
+		sort();
+		float color = batch.getPackedColor();
+		for(int k = 0; k < size; k++) {
+			int i = (int) keys[k];
+			float w = width[i], h = height[i];
+			batch.setPackedColor(colors[i]);
+			if(rotation[i] == 0) batch.draw(regions[i], x[i], y[i], w, h);
+			else batch.draw(regions[i], x[i], y[i], w / 2, h / 2, w, h, 1, 1, rotation[i]);
+			regions[i] = null;
+		}
+		batch.setPackedColor(color);
+		numFlushed = size;
+		size = 0;
+		textureIds.clear();
+	}
+	
+	/** Empties the queue without drawing anything. */
+	public void clear() {
+		for(int i = 0; i < size; i++) regions[i] = null;
+		size = 0;
+		textureIds.clear();
+	}
+	
+	/** @return The number of sprites submitted since the queue was last flushed. */
+	public int size() {
+		return size;
+	}
+	
+	/** @return The number of sprites drawn by the last flush. */
+	public int getNumFlushed() {
+		return numFlushed;
+	}
+	
+	// Sorts the keys by layer and texture. Keys are submitted in order and each pass is stable, so only the upper 32 bits need sorting.
+	private void sort() {
+		long[] from = keys, to = sortBuffer;
+		for(int shift = 32; shift < 64; shift += 8) {
+			for(int d = 0; d < 256; d++) counts[d] = 0;
+			for(int k = 0; k < size; k++) counts[(int) (from[k] >>> shift) & 0xFF]++;
+			if(size == 0 || counts[(int) (from[0] >>> shift) & 0xFF] == size) continue; // Skips digits every key shares.
+			
+			int total = 0;
+			for(int d = 0; d < 256; d++) {
+				int count = counts[d];
+				counts[d] = total;
+				total += count;
+			}
+			for(int k = 0; k < size; k++) to[counts[(int) (from[k] >>> shift) & 0xFF]++] = from[k];
+			long[] swap = from;
+			from = to;
+			to = swap;
+		}
+		keys = from;
+		sortBuffer = to;
+	}
+	
+	// Grows the buffers so they can hold the given number of sprites.
+	private void ensureCapacity(int capacity) {
+		if(regions != null && regions.length >= capacity) return;
+		int length = Math.max(capacity, regions == null ? 0 : regions.length * 2);
+		regions = copy(regions, new TextureRegion[length]);
+		x = copy(x, new float[length]);
+		y = copy(y, new float[length]);
+		width = copy(width, new float[length]);
+		height = copy(height, new float[length]);
+		rotation = copy(rotation, new float[length]);
+		colors = copy(colors, new float[length]);
+		keys = copy(keys, new long[length]);
+		sortBuffer = new long[length];
+	}
+	
+	private TextureRegion[] copy(TextureRegion[] from, TextureRegion[] to) {
+		if(from != null) System.arraycopy(from, 0, to, 0, size);
+		return to;
+	}
+	
+	private float[] copy(float[] from, float[] to) {
+		if(from != null) System.arraycopy(from, 0, to, 0, size);
+		return to;
+	}
+	
+	private long[] copy(long[] from, long[] to) {
+		if(from != null) System.arraycopy(from, 0, to, 0, size);
+		return to;
+	}
+}
@@ -0,0 +1,206 @@
+package psyknz.libgdx.architecture;
+
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.utils.IntArray;
+
+/** Uniform grid broadphase used by the {@link CollisionSystem}. Bounding boxes are bucketed into square cells which are hashed into a
+ * fixed size table, so colliders are only ever tested against other colliders sharing a cell. Buffers are grown as needed and reused
+ * between frames so rebuilding the hash each update does not allocate once it has warmed up.
+ * @author Alex Crowther */
+public class SpatialHash {
+	
+	private float cellSize;			// Width and height of each cell in in-game units.
+	private float inverseCellSize;	// Cached reciprocal of the cell size used to find which cells a bounding box covers.
+	
+	private CollisionGroup group;	// The group of colliders currently held in the hash.
+	private int count;				// Number of bounding boxes currently held in the hash.
+	private int[] cellX0, cellY0, cellX1, cellY1;	// Range of cells covered by every bounding box in the hash.
+	
+	private int tableMask;		// Size of the bucket table minus one. The table size is always a power of two.
+	private int[] bucketStart;	// Index into entries where each bucket begins. The final element marks the end of the last bucket.
+	private int[] bucketFill;	// Write position of each bucket while the hash is being filled.
+	private int[] bucketLast;	// Last box added to each bucket, used to stop a box being added to a bucket twice.
+	private int[] entries;		// Indices of the boxes held in each bucket, stored contiguously bucket by bucket.
+	
+	/** Creates a new empty SpatialHash.
+	 * @param cellSize Width and height of each cell. Ideally slightly larger than the typical collider. */
+	public SpatialHash(float cellSize) {
+		setCellSize(cellSize);
+		ensureCapacity(16);
+		entries = new int[32];
+	}
+	
+	/** Buckets the bounding boxes of every {@link Collidable} in the given group, replacing anything previously held in the hash.
+	 * @param group The colliders to insert. Indices reported by the pair methods refer to positions in this group. */
+	public void build(CollisionGroup group) {
+		this.group = group;
+		ensureCapacity(group.size);
+		count = group.size;
+		float[] minX = group.minX, minY = group.minY, maxX = group.maxX, maxY = group.maxY;
+		for(int i = 0; i < count; i++) {
+			cellX0[i] = cell(minX[i]);
+			cellY0[i] = cell(minY[i]);
+			cellX1[i] = cell(maxX[i]);
+			cellY1[i] = cell(maxY[i]);
+		}
+		
+		// Counts how many boxes fall into each bucket so entries can be laid out contiguously.
+		int tableSize = tableMask + 1;
+		for(int b = 0; b <= tableSize; b++) bucketStart[b] = 0;
+		for(int b = 0; b < tableSize; b++) bucketLast[b] = -1;
+		int total = 0;
+		for(int i = 0; i < count; i++) {
+			for(int cx = cellX0[i]; cx <= cellX1[i]; cx++) {
+				for(int cy = cellY0[i]; cy <= cellY1[i]; cy++) {
+					int b = bucket(cx, cy);
+					if(bucketLast[b] == i) continue;	// Boxes covering several cells in the same bucket are only stored once.
+					bucketLast[b] = i;
+					bucketStart[b + 1]++;
+					total++;
+				}
+			}
+		}
+		for(int b = 0; b < tableSize; b++) bucketStart[b + 1] += bucketStart[b];	// Converts the counts into start positions.
+		if(entries.length < total) entries = new int[Math.max(total, entries.length * 2)];
+		
+		// Writes each box into every bucket it covers.
+		for(int b = 0; b < tableSize; b++) {
+			bucketFill[b] = bucketStart[b];
+			bucketLast[b] = -1;
+		}
+		for(int i = 0; i < count; i++) {
+			for(int cx = cellX0[i]; cx <= cellX1[i]; cx++) {
+				for(int cy = cellY0[i]; cy <= cellY1[i]; cy++) {
+					int b = bucket(cx, cy);
+					if(bucketLast[b] == i) continue;
+					bucketLast[b] = i;
+					entries[bucketFill[b]++] = i;
+				}
+			}
+		}
+	}
+	
+	/** Finds every overlapping pair of boxes held in the hash. Each pair is reported exactly once, even when both boxes share many
+	 * cells, by only accepting it in the cell containing the bottom left corner of the pair's intersection. The search can be split
+	 * into ranges of boxes which may be searched on separate threads.
+	 * @param start Index of the first box to search from.
+	 * @param end Index after the last box to search from.
+	 * @param pairs Array the indices of each overlapping pair are appended to, lower index first. */
+	public void findPairs(int start, int end, IntArray pairs) {
+		float[] minX = group.minX, minY = group.minY, maxX = group.maxX, maxY = group.maxY;
+		for(int i = start; i < end; i++) {
+			for(int cx = cellX0[i]; cx <= cellX1[i]; cx++) {
+				for(int cy = cellY0[i]; cy <= cellY1[i]; cy++) {
+					int b = bucket(cx, cy);
+					for(int e = bucketStart[b]; e < bucketStart[b + 1]; e++) {
+						int j = entries[e];
+						if(j <= i) continue;	// Each pair is only tested from its lower index.
+						if(minX[i] >= maxX[j] || maxX[i] <= minX[j] || minY[i] >= maxY[j] || maxY[i] <= minY[j]) continue;
+						if(Math.max(cellX0[i], cellX0[j]) != cx || Math.max(cellY0[i], cellY0[j]) != cy) continue;
+						pairs.add(i, j);
+					}
+				}
+			}
+		}
+	}
+	
+	/** Finds every box held in the hash which overlaps a {@link Collidable} from another group. Each pair is reported exactly once.
+	 * @param other The colliders to test against the contents of the hash.
+	 * @param start Index of the first collider in other to search from.
+	 * @param end Index after the last collider in other to search from.
+	 * @param pairs Array the indices of each overlapping pair are appended to, the index into other first. */
+	public void findPairs(CollisionGroup other, int start, int end, IntArray pairs) {
+		float[] minX = group.minX, minY = group.minY, maxX = group.maxX, maxY = group.maxY;
+		for(int i = start; i < end; i++) {
+			float x0 = other.minX[i], y0 = other.minY[i], x1 = other.maxX[i], y1 = other.maxY[i];
+			int cx0 = cell(x0), cy0 = cell(y0), cx1 = cell(x1), cy1 = cell(y1);
+			for(int cx = cx0; cx <= cx1; cx++) {
+				for(int cy = cy0; cy <= cy1; cy++) {
+					int b = bucket(cx, cy);
+					for(int e = bucketStart[b]; e < bucketStart[b + 1]; e++) {
+						int j = entries[e];
+						if(x0 >= maxX[j] || x1 <= minX[j] || y0 >= maxY[j] || y1 <= minY[j]) continue;
+						if(Math.max(cx0, cellX0[j]) != cx || Math.max(cy0, cellY0[j]) != cy) continue;
+						pairs.add(i, j);
+					}
+				}
+			}
+		}
+	}
+	
+	/** Finds every box held in the hash which touches an area, including boxes which only share an edge with it. Each box is
+	 * reported once, in the cell where its cells and the area's cells first overlap. Areas covering more cells than there are boxes
+	 * are tested against every box instead.
+	 * @param x0 Left edge of the area.
+	 * @param y0 Bottom edge of the area.
+	 * @param x1 Right edge of the area.
+	 * @param y1 Top edge of the area.
+	 * @param results Array the index of each box found is appended to. */
+	public void query(float x0, float y0, float x1, float y1, IntArray results) {
+		float[] minX = group.minX, minY = group.minY, maxX = group.maxX, maxY = group.maxY;
+		int cx0 = cell(x0), cy0 = cell(y0), cx1 = cell(x1), cy1 = cell(y1);
+		if((long) (cx1 - cx0 + 1) * (cy1 - cy0 + 1) > count) {
+			for(int j = 0; j < count; j++) {
+				if(x0 <= maxX[j] && x1 >= minX[j] && y0 <= maxY[j] && y1 >= minY[j]) results.add(j);
+			}
+			return;
+		}
+		for(int cx = cx0; cx <= cx1; cx++) {
+			for(int cy = cy0; cy <= cy1; cy++) {
+				int b = bucket(cx, cy);
+				for(int e = bucketStart[b]; e < bucketStart[b + 1]; e++) {
+					int j = entries[e];
+					if(x0 > maxX[j] || x1 < minX[j] || y0 > maxY[j] || y1 < minY[j]) continue;
+					if(Math.max(cx0, cellX0[j]) != cx || Math.max(cy0, cellY0[j]) != cy) continue;
+					results.add(j);
+				}
+			}
+		}
+	}
+	
+	/** Changes the size of the cells boxes are bucketed into. Takes effect the next time the hash is built.
+	 * @param cellSize Width and height of each cell in in-game units. */
+	public void setCellSize(float cellSize) {
+		if(cellSize <= 0) throw new IllegalArgumentException("Cell size must be greater than zero: " + cellSize);
+		this.cellSize = cellSize;
+		inverseCellSize = 1 / cellSize;
+	}
+	
+	public float getCellSize() {
+		return cellSize;
+	}
+	
+	/** @return The number of bounding boxes currently held in the hash. */
+	public int size() {
+		return count;
+	}
+	
+	// Finds the index of the cell containing the given coordinate.
+	private int cell(float coord) {
+		return (int) Math.floor(coord * inverseCellSize);
+	}
+	
+	// Hashes a cell coordinate into the bucket table.
+	private int bucket(int cx, int cy) {
+		return ((cx * 73856093) ^ (cy * 19349663)) & tableMask;
+	}
+	
+	// Grows the per box buffers and bucket table so they can hold the given number of boxes.
+	private void ensureCapacity(int capacity) {
+		if(cellX0 == null || cellX0.length < capacity) {
+			int size = Math.max(capacity, cellX0 == null ? 0 : cellX0.length * 2);
+			cellX0 = new int[size];
+			cellY0 = new int[size];
+			cellX1 = new int[size];
+			cellY1 = new int[size];
+		}
+		
+		int tableSize = MathUtils.nextPowerOfTwo(Math.max(capacity, 8) * 2);	// Keeps the table at least twice the box count.
+		if(bucketStart == null || bucketStart.length - 1 < tableSize) {
+			bucketStart = new int[tableSize + 1];
+			bucketFill = new int[tableSize];
+			bucketLast = new int[tableSize];
+			tableMask = tableSize - 1;
+		}
+	}
+}
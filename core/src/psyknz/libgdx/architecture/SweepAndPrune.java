@@ -0,0 +1,181 @@
+package psyknz.libgdx.architecture;
+
+import com.badlogic.gdx.utils.IntArray;
+
+/** Sweep and prune broadphase used by the {@link CollisionSystem}. Keeps the colliders of a single group sorted by the left edge of
+ * their bounding boxes between frames. Since most colliders only move a little each frame the list stays nearly sorted, so it is
+ * repaired with an insertion sort in close to linear time and then swept along the x-axis to find overlapping pairs. Once sorted,
+ * the bounding boxes are copied into a single array in sorted order, so a sweep reads each box from the memory right after the last
+ * rather than jumping around the group's arrays.
+ * @author Alex Crowther */
+public class SweepAndPrune {
+	
+	// Offsets of each edge within a box of the sorted boxes array.
+	private static final int MIN_X = 0, MIN_Y = 1, MAX_X = 2, MAX_Y = 3;
+	
+	private final CollisionGroup group;	// The group of colliders this list tracks.
+	private int count;					// Number of colliders in the group when the list was last updated.
+	private int[] order;				// Indices into the group, sorted by the left edge of each collider.
+	private float[] boxes;				// Edges of every collider's bounding box in sorted order, four floats per collider.
+	private double maxWidth;			// Width of the widest collider when the list was last updated.
+	
+	/** Creates a new empty SweepAndPrune list.
+	 * @param group The group of colliders this list tracks. Indices reported by the pair methods refer to positions in it. */
+	public SweepAndPrune(CollisionGroup group) {
+		this.group = group;
+		order = new int[16];
+		boxes = new float[16 * 4];
+	}
+	
+	/** Restores the sorted order of the list using the bounding boxes the group was last refreshed with. Colliders added to the end
+	 * of the group are appended to the list, and any removed from the group are dropped before sorting. */
+	public void update() {
+		int size = group.size;
+		if(order.length < size) {
+			int[] newOrder = new int[Math.max(size, order.length * 2)];
+			System.arraycopy(order, 0, newOrder, 0, count);
+			order = newOrder;
+			boxes = new float[newOrder.length * 4];
+		}
+		if(size > count) {
+			for(int i = count; i < size; i++) order[i] = i;	// New colliders are appended and sorted into place below.
+		}
+		else if(size < count) {
+			int n = 0;
+			for(int k = 0; k < count; k++) {
+				if(order[k] < size) order[n++] = order[k];	// Indices past the end of the group are removed.
+			}
+		}
+		count = size;
+		
+		// Insertion sort is close to linear when the list was already sorted last frame.
+		float[] minX = group.minX;
+		for(int k = 1; k < count; k++) {
+			int index = order[k];
+			float x = minX[index];
+			int m = k - 1;
+			while(m >= 0 && minX[order[m]] > x) {
+				order[m + 1] = order[m];
+				m--;
+			}
+			order[m + 1] = index;
+		}
+		
+		// The widest collider bounds how far left of an area a collider touching it can start. Kept as a double, in which the width
+		// of a float box is exact, so queries never skip a collider because of rounding.
+		float[] minY = group.minY, maxX = group.maxX, maxY = group.maxY;
+		maxWidth = 0;
+		for(int k = 0, b = 0; k < count; k++, b += 4) {
+			int i = order[k];
+			boxes[b + MIN_X] = minX[i];
+			boxes[b + MIN_Y] = minY[i];
+			boxes[b + MAX_X] = maxX[i];
+			boxes[b + MAX_Y] = maxY[i];
+			maxWidth = Math.max(maxWidth, (double) maxX[i] - minX[i]);
+		}
+	}
+	
+	/** Sweeps along the sorted list finding every overlapping pair of colliders in the group. Each pair is reported once. The sweep
+	 * can be split into ranges of the sorted list, each a strip along the x-axis, which may be searched on separate threads.
+	 * @param start Position in the sorted list of the first collider to sweep from.
+	 * @param end Position in the sorted list after the last collider to sweep from.
+	 * @param pairs Array the group indices of each overlapping pair are appended to. */
+	public void findPairs(int start, int end, IntArray pairs) {
+		float[] boxes = this.boxes;
+		int limit = count * 4;
+		for(int k = start; k < end; k++) {
+			int a = k * 4;
+			float x0 = boxes[a + MIN_X], y0 = boxes[a + MIN_Y], x1 = boxes[a + MAX_X], y1 = boxes[a + MAX_Y];
+			for(int b = a + 4; b < limit && boxes[b + MIN_X] < x1; b += 4) {	// Sweep stops at the first collider past the right edge.
+				if(y0 < boxes[b + MAX_Y] && y1 > boxes[b + MIN_Y] && boxes[b + MAX_X] > x0) pairs.add(order[k], order[b >> 2]);
+			}
+		}
+	}
+	
+	/** Finds every collider in this group which overlaps a collider in another group. Colliders in this list are swept against the
+	 * colliders of the other list which start at or after them, then the other list is swept against colliders in this list which
+	 * start after them, so each pair is reported once. Positions 0 to size() - 1 of the range sweep from this list and positions
+	 * size() to size() + other.size() - 1 sweep from the other list.
+	 * @param other The list of the group being tested against this one.
+	 * @param start First position of the combined range to sweep from.
+	 * @param end Position after the last position of the combined range to sweep from.
+	 * @param pairs Array the indices of each overlapping pair are appended to, the index into this group first. */
+	public void findPairs(SweepAndPrune other, int start, int end, IntArray pairs) {
+		if(start < count) sweep(other, start, Math.min(end, count), true, false, pairs);
+		if(end > count) other.sweep(this, Math.max(start - count, 0), end - count, false, true, pairs);
+	}
+	
+	/** Finds every collider in the list which touches an area, including colliders which only share an edge with it. Only the
+	 * colliders starting between the right edge of the area and the width of the widest collider left of the area are tested, both
+	 * found by binary search, so a query costs O(log n + k) where k is the number of colliders starting in that strip. A few very
+	 * wide colliders widen the strip for every query, and are better kept in a static group.
+	 * @param x0 Left edge of the area.
+	 * @param y0 Bottom edge of the area.
+	 * @param x1 Right edge of the area.
+	 * @param y1 Top edge of the area.
+	 * @param results Array the group index of each collider found is appended to. */
+	public void query(float x0, float y0, float x1, float y1, IntArray results) {
+		float[] boxes = this.boxes;
+		
+		// Binary search for the first collider which starts past the right edge of the area.
+		int low = 0, high = count;
+		while(low < high) {
+			int mid = (low + high) >>> 1;
+			if(boxes[mid * 4 + MIN_X] <= x1) low = mid + 1;
+			else high = mid;
+		}
+		int end = low;
+		
+		// Binary search for the first collider which starts close enough to the area to reach it. Any collider starting further left
+		// is narrower than the gap, so ends before the left edge of the area.
+		double left = x0 - maxWidth;
+		low = 0;
+		high = end;
+		while(low < high) {
+			int mid = (low + high) >>> 1;
+			if(boxes[mid * 4 + MIN_X] < left) low = mid + 1;
+			else high = mid;
+		}
+		for(int k = low, b = low * 4; k < end; k++, b += 4) {
+			if(boxes[b + MAX_X] >= x0 && boxes[b + MIN_Y] <= y1 && boxes[b + MAX_Y] >= y0) results.add(order[k]);
+		}
+	}
+	
+	// Sweeps the colliders in the given range of this list against the colliders of another list which start after them.
+	private void sweep(SweepAndPrune other, int start, int end, boolean inclusive, boolean swap, IntArray pairs) {
+		float[] boxes = this.boxes, otherBoxes = other.boxes;
+		int[] otherOrder = other.order;
+		int otherLimit = other.count * 4;
+			
+		// Binary search for the first collider in the other list which starts after the first collider being swept.
+		int m = 0;
+		if(start < end) {
+			float x = boxes[start * 4 + MIN_X];
+			int high = other.count;
+			while(m < high) {
+				int mid = (m + high) >>> 1;
+				float o = otherBoxes[mid * 4 + MIN_X];
+				if(o < x || (!inclusive && o == x)) m = mid + 1;
+				else high = mid;
+			}
+		}
+		m *= 4;
+		
+		for(int k = start; k < end; k++) {
+			int i = order[k], a = k * 4;
+			float x0 = boxes[a + MIN_X], y0 = boxes[a + MIN_Y], x1 = boxes[a + MAX_X], y1 = boxes[a + MAX_Y];
+			while(m < otherLimit && (otherBoxes[m + MIN_X] < x0 || (!inclusive && otherBoxes[m + MIN_X] == x0))) m += 4;
+			for(int b = m; b < otherLimit && otherBoxes[b + MIN_X] < x1; b += 4) {
+				if(y0 < otherBoxes[b + MAX_Y] && y1 > otherBoxes[b + MIN_Y] && otherBoxes[b + MAX_X] > x0) {
+					if(swap) pairs.add(otherOrder[b >> 2], i);
+					else pairs.add(i, otherOrder[b >> 2]);
+				}
+			}
+		}
+	}
+	
+	/** @return The number of colliders in the list. */
+	public int size() {
+		return count;
+	}
+}
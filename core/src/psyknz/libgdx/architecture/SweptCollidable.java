@@ -0,0 +1,20 @@
+package psyknz.libgdx.architecture;
+
+import com.badlogic.gdx.math.Vector2;
+
+/** Extension of {@link Collidable} for fast moving objects, such as projectiles, which could pass straight through a thin collider
+ * in a single update. The {@link CollisionSystem} sweeps the bounding box from its previous position to its current one, and finds
+ * the time during the update it first touched anything in its path.
+ * @author Alex Crowther */
+public interface SweptCollidable extends Collidable {
+	
+	/** @return Position of the bottom left corner of the bounding box at the start of the current update. */
+	public Vector2 getPreviousPosition();
+	
+	/** Called instead of {@link #collision(Collidable)} whenever this Collidable collides with another during an update.
+	 * @param collider Reference to the other Collider this object has collided with.
+	 * @param timeOfImpact Fraction of the way through this update's movement that the two bounding boxes first touched, from 0 if
+	 * they were already touching at the start of the update to 1 at the end of the update. */
+	public void sweptCollision(Collidable collider, float timeOfImpact);
+	
+}
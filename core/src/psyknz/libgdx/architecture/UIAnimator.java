@@ -0,0 +1,282 @@
+package psyknz.libgdx.architecture;
+
+import com.badlogic.gdx.math.Interpolation;
+import com.badlogic.gdx.math.Rectangle;
+import com.badlogic.gdx.utils.ObjectIntMap;
+
+/** Animates the bounds of {@link UIFeature} objects. Every animation is stored in a set of parallel primitive arrays rather than as
+ * an object of its own, so starting, running and finishing animations allocates nothing once the arrays have grown to the number
+ * running at once. Each update works out the new bounds of every animated feature before any are set, so a feature animated along
+ * several properties at once, such as a {@link UITable} being moved and resized, has its bounds set once and is laid out at most
+ * once per frame. Features which are only moved are positioned with setPosition, which tables handle without laying out at all,
+ * and the features of moved tables are put in place by one {@link UITable#resolve()} of each outermost table per update, however many moved.
+ * Animated properties use the types declared by {@link UIFeatureTween}. When two animations change the same property of a feature
+ * the one started last wins.
+ * @author Alex Crowther */
+public class UIAnimator {
+	
+	// First component of the bounds (x, y, width, height) changed by each type of animation, and the number of components changed.
+	private static final int[] FIRST = {0, 1, 0, 2, 3, 2, 0};
+	private static final int[] COUNT = {1, 1, 2, 1, 1, 2, 4};
+	
+	private static final int POSITION_MASK = 3; // Components which can be changed without resizing the feature.
+	
+	private UIFeature[] targets;				// Feature changed by each animation.
+	private int[] types;						// Property of the feature changed by each animation.
+	private Interpolation[] interpolations;		// Shape of each animation's curve.
+	private float[] elapsed;					// Time each animation has run for. Negative while an animation is delayed.
+	private float[] durations;					// Time each animation takes to finish.
+	private float[] from;						// Values each animation starts from, four floats per animation.
+	private float[] to;							// Values each animation ends at, four floats per animation.
+	private boolean[] started;					// Whether each animation has read the values it starts from.
+	private int size;							// Number of animations running.
+	
+	private final ObjectIntMap<UIFeature> slots;	// Index of each feature changed during the current update.
+	private UIFeature[] features;					// Features changed during the current update.
+	private float[] values;							// New bounds of each feature changed during the current update, four floats per feature.
+	private int[] changed;							// Components of each feature's bounds changed during the current update.
+	private int numFeatures;						// Number of features changed during the current update.
+	
+	/** Creates a new UIAnimator with room for 16 animations before it needs to grow. */
+	public UIAnimator() {
+		this(16);
+	}
+	
+	/** Creates a new UIAnimator.
+	 * @param capacity The number of animations which can run at once before the animator needs to grow. */
+	public UIAnimator(int capacity) {
+		capacity = Math.max(1, capacity);
+		targets = new UIFeature[capacity];
+		types = new int[capacity];
+		interpolations = new Interpolation[capacity];
+		elapsed = new float[capacity];
+		durations = new float[capacity];
+		from = new float[capacity * 4];
+		to = new float[capacity * 4];
+		started = new boolean[capacity];
+		slots = new ObjectIntMap<UIFeature>(capacity);
+		features = new UIFeature[capacity];
+		values = new float[capacity * 4];
+		changed = new int[capacity];
+	}
+	
+	/** Moves a feature to the given position.
+	 * @param feature The feature to move.
+	 * @param x The x coordinate of the feature's bottom left corner once the animation finishes.
+	 * @param y The y coordinate of the feature's bottom left corner once the animation finishes.
+	 * @param duration Time in seconds the animation takes.
+	 * @param interpolation Shape of the animation's curve, such as Interpolation.pow2Out. */
+	public void moveTo(UIFeature feature, float x, float y, float duration, Interpolation interpolation) {
+		animate(feature, UIFeatureTween.POS, x, y, 0, 0, duration, 0, interpolation);
+	}
+	
+	/** Resizes a feature to the given size, keeping its bottom left corner in place.
+	 * @param feature The feature to resize.
+	 * @param width The width of the feature once the animation finishes.
+	 * @param height The height of the feature once the animation finishes.
+	 * @param duration Time in seconds the animation takes.
+	 * @param interpolation Shape of the animation's curve. */
+	public void sizeTo(UIFeature feature, float width, float height, float duration, Interpolation interpolation) {
+		animate(feature, UIFeatureTween.SIZE, width, height, 0, 0, duration, 0, interpolation);
+	}
+	
+	/** Moves and resizes a feature to the given bounds.
+	 * @param feature The feature to animate.
+	 * @param x The x coordinate of the feature's bottom left corner once the animation finishes.
+	 * @param y The y coordinate of the feature's bottom left corner once the animation finishes.
+	 * @param width The width of the feature once the animation finishes.
+	 * @param height The height of the feature once the animation finishes.
+	 * @param duration Time in seconds the animation takes.
+	 * @param interpolation Shape of the animation's curve. */
+	public void boundsTo(UIFeature feature, float x, float y, float width, float height, float duration, Interpolation interpolation) {
+		animate(feature, UIFeatureTween.BOUNDS, x, y, width, height, duration, 0, interpolation);
+	}
+	
+	/** Starts animating a property of a feature from its current value to the given values. The current value is read when the
+	 * animation starts, after its delay, so animations can be queued one after another.
+	 * @param feature The feature to animate.
+	 * @param type The property to animate, one of the types declared by {@link UIFeatureTween}.
+	 * @param a First value of the property once the animation finishes.
+	 * @param b Second value of the property, used by the POS, SIZE and BOUNDS types.
+	 * @param c Third value of the property, used by the BOUNDS type.
+	 * @param d Fourth value of the property, used by the BOUNDS type.
+	 * @param duration Time in seconds the animation takes once started.
+	 * @param delay Time in seconds before the animation starts.
+	 * @param interpolation Shape of the animation's curve. */
+	public void animate(UIFeature feature, int type, float a, float b, float c, float d, float duration, float delay,
+			Interpolation interpolation) {
+		if(type < 0 || type >= FIRST.length) throw new IllegalArgumentException("Unknown animation type: " + type);
+		if(size == targets.length) grow(size * 2);
+		targets[size] = feature;
+		types[size] = type;
+		interpolations[size] = interpolation == null ? Interpolation.linear : interpolation;
+		elapsed[size] = -Math.max(0, delay);
+		durations[size] = Math.max(0, duration);
+		started[size] = false;
+		int k = size * 4;
+		to[k] = a;
+		to[k + 1] = b;
+		to[k + 2] = c;
+		to[k + 3] = d;
+		size++;
+	}
+	
+	/** Advances every animation and sets the new bounds of each animated feature. Each feature has its bounds set at most once, and
+	 * the outermost table around each animated {@link UITable} is resolved afterwards so its features are in place before being
+	 * drawn. Finished animations are removed once their final values have been set.
+	 * @param delta Time in seconds since the last update. */
+	public void update(float delta) {
+		if(size == 0) return;
+		
+		// Works out the new bounds of every animated feature, starting from the bounds it has now.
+		int kept = 0;
+		for(int i = 0; i < size; i++) {
+			float time = elapsed[i] += delta;
+			if(time >= 0) {
+				int slot = getSlot(targets[i]);
+				int first = FIRST[types[i]], count = COUNT[types[i]];
+				int k = i * 4, v = slot * 4 + first;
+				if(!started[i]) {
+					// The animation starts from the feature's bounds as they stand, including changes made by earlier animations.
+					started[i] = true;
+					for(int c = 0; c < count; c++) from[k + c] = values[v + c];
+				}
+				float alpha = time >= durations[i] ? 1 : interpolations[i].apply(time / durations[i]);
+				for(int c = 0; c < count; c++) values[v + c] = from[k + c] + (to[k + c] - from[k + c]) * alpha;
+				changed[slot] |= ((1 << count) - 1) << first;
+				if(time >= durations[i]) continue; // Finished animations are dropped by not being kept.
+			}
+			if(kept != i) copy(i, kept);
+			kept++;
+		}
+		for(int i = kept; i < size; i++) {	// Lets go of the features and curves of finished animations.
+			targets[i] = null;
+			interpolations[i] = null;
+		}
+		size = kept;
+		
+		// Sets the bounds of each animated feature once, then moves the features of any animated tables into place.
+		for(int i = 0; i < numFeatures; i++) {
+			UIFeature f = features[i];
+			int k = i * 4;
+			if(f instanceof UITable) {	// Tables are only resolved once every feature has been set, so nested tables moving along
+				UITable t = (UITable) f;	// with the tables around them have their features moved once.
+				if((changed[i] & ~POSITION_MASK) == 0) t.shift(values[k] - t.getBounds().x, values[k + 1] - t.getBounds().y);
+				else t.layout(values[k], values[k + 1], values[k + 2], values[k + 3]);
+			}
+			else if((changed[i] & ~POSITION_MASK) == 0) f.setPosition(values[k], values[k + 1]);
+			else f.setBounds(values[k], values[k + 1], values[k + 2], values[k + 3]);
+		}
+		for(int i = 0; i < numFeatures; i++) {
+			if(features[i] instanceof UITable) ((UITable) features[i]).getRoot().resolve();
+			features[i] = null;
+		}
+		numFeatures = 0;
+		slots.clear();
+	}
+	
+	/** Stops every animation of a feature, leaving it where it is.
+	 * @param feature The feature to stop animating. */
+	public void cancel(UIFeature feature) {
+		int kept = 0;
+		for(int i = 0; i < size; i++) {
+			if(targets[i] == feature) continue;
+			if(kept != i) copy(i, kept);
+			kept++;
+		}
+		for(int i = kept; i < size; i++) {
+			targets[i] = null;
+			interpolations[i] = null;
+		}
+		size = kept;
+	}
+	
+	/** Stops every animation, leaving each feature where it is. */
+	public void clear() {
+		for(int i = 0; i < size; i++) {
+			targets[i] = null;
+			interpolations[i] = null;
+		}
+		size = 0;
+	}
+	
+	/** @param feature The feature to check.
+	 * @return True if the feature has an animation running or waiting to start. */
+	public boolean isAnimating(UIFeature feature) {
+		for(int i = 0; i < size; i++) if(targets[i] == feature) return true;
+		return false;
+	}
+	
+	/** @return The number of animations running or waiting to start. */
+	public int getSize() {
+		return size;
+	}
+	
+	// Gets the index a feature's new bounds are worked out at during the current update, reading its current bounds the first time.
+	private int getSlot(UIFeature feature) {
+		int slot = slots.get(feature, -1);
+		if(slot >= 0) return slot;
+		slot = numFeatures++;
+		if(slot == features.length) {
+			UIFeature[] newFeatures = new UIFeature[slot * 2];
+			System.arraycopy(features, 0, newFeatures, 0, slot);
+			features = newFeatures;
+			float[] newValues = new float[slot * 8];
+			System.arraycopy(values, 0, newValues, 0, slot * 4);
+			values = newValues;
+			int[] newChanged = new int[slot * 2];
+			System.arraycopy(changed, 0, newChanged, 0, slot);
+			changed = newChanged;
+		}
+		slots.put(feature, slot);
+		features[slot] = feature;
+		changed[slot] = 0;
+		Rectangle bounds = feature.getBounds();
+		int k = slot * 4;
+		values[k] = bounds.x;
+		values[k + 1] = bounds.y;
+		values[k + 2] = bounds.width;
+		values[k + 3] = bounds.height;
+		return slot;
+	}
+	
+	// Moves an animation to a lower index when the animations between are removed.
+	private void copy(int src, int dst) {
+		targets[dst] = targets[src];
+		types[dst] = types[src];
+		interpolations[dst] = interpolations[src];
+		elapsed[dst] = elapsed[src];
+		durations[dst] = durations[src];
+		started[dst] = started[src];
+		System.arraycopy(from, src * 4, from, dst * 4, 4);
+		System.arraycopy(to, src * 4, to, dst * 4, 4);
+	}
+	
+	// Grows the arrays holding the animations so the given number can run at once.
+	private void grow(int capacity) {
+		UIFeature[] newTargets = new UIFeature[capacity];
+		System.arraycopy(targets, 0, newTargets, 0, size);
+		targets = newTargets;
+		int[] newTypes = new int[capacity];
+		System.arraycopy(types, 0, newTypes, 0, size);
+		types = newTypes;
+		Interpolation[] newInterpolations = new Interpolation[capacity];
+		System.arraycopy(interpolations, 0, newInterpolations, 0, size);
+		interpolations = newInterpolations;
+		float[] newElapsed = new float[capacity];
+		System.arraycopy(elapsed, 0, newElapsed, 0, size);
+		elapsed = newElapsed;
+		float[] newDurations = new float[capacity];
+		System.arraycopy(durations, 0, newDurations, 0, size);
+		durations = newDurations;
+		boolean[] newStarted = new boolean[capacity];
+		System.arraycopy(started, 0, newStarted, 0, size);
+		started = newStarted;
+		float[] newFrom = new float[capacity * 4];
+		System.arraycopy(from, 0, newFrom, 0, size * 4);
+		from = newFrom;
+		float[] newTo = new float[capacity * 4];
+		System.arraycopy(to, 0, newTo, 0, size * 4);
+		to = newTo;
+	}
+}
@@ -11,9 +11,20 @@ public class UITable implements UIFeature {
 	
 	private Rectangle bounds;				// Rectangle representing the size and position of the table.
 	private Array<float[]> cells;			// Array containing the measurements for each cell as proportion of the table size.
-	private Array<Rectangle> cellBounds;	// Array containing bounding boxes for each cell in the table.
+	private float[] cellBounds;				// Position relative to the table and size of each cell, four floats per cell.
+	private boolean[] cellChanged;			// Whether each cell's bounds changed during the last layout.
+	private int numCells;					// Number of cells currently present in the table.
 	private Array<UIFeature> features;		// Array containing references to all UIFeatures edited by the table.
 	
+	private boolean dirty;					// Whether every feature must be laid out again, even if the table hasn't changed.
+	private float layoutBorderSize;			// The border size used by the last layout.
+	private float layoutPaddingSize;		// The padding size used by the last layout.
+	private boolean layoutProportional;		// Whether the last layout used proportional sizes.
+	
+	private UITable parent;					// The table this table is a feature of, or null if it's the outermost table.
+	private float offsetX, offsetY;			// Distance the table has moved since its features were last positioned.
+	private boolean moved;					// Whether this table, or a table nested in it, has moved since it was last resolved.
+	
 	/**
 	 * Creates a blank UITable with no padding or border. Perfect for sub-tables.
 	 */
@@ -34,8 +45,10 @@ public class UITable implements UIFeature {
 		
 		bounds = new Rectangle();			// Initialises all variables used by the table.
 		cells = new Array<float[]>();
-		cellBounds = new Array<Rectangle>();
+		cellBounds = new float[32];
+		cellChanged = new boolean[8];
 		features = new Array<UIFeature>();
+		dirty = true;						// The table is laid out the first time its bounds are set.
 	}
 	
 	/**
@@ -47,10 +60,19 @@ public class UITable implements UIFeature {
 		float[] c = new float[widths.length + 1];	// Creates a new array to hold cell information.
 		c[0] = height;								// The first entry in the array stores the row height.
 		for(int i = 1; i < c.length; i++) {			// For every row width specified,
-			c[i] = widths[i - 1];					// the width is saved
-			cellBounds.add(new Rectangle());		// and a new blank rectangle is created.
+			c[i] = widths[i - 1];					// the width is saved.
 		}
 		cells.add(c);								// The new row is added to the array of rows.
+		
+		numCells += widths.length;					// Room is made to store the bounds of each new cell.
+		if(cellChanged.length < numCells) {
+			int capacity = Math.max(numCells, cellChanged.length * 2);
+			float[] newBounds = new float[capacity * 4];
+			System.arraycopy(cellBounds, 0, newBounds, 0, cellBounds.length);
+			cellBounds = newBounds;
+			cellChanged = new boolean[capacity];
+		}
+		dirty = true;								// Every cell has moved, so the table is laid out again in full.
 	}
 	
 	/**
@@ -70,19 +92,47 @@ public class UITable implements UIFeature {
 	 */
 	public void addFeature(UIFeature f) {
 		features.add(f);
+		if(f instanceof UITable) ((UITable) f).parent = this;	// Nested tables tell the table when they move.
+		dirty = true;	// The new feature is sized the next time the table is laid out.
+	}
+	
+	/**
+	 * Forces the table to lay out every feature the next time its bounds are set, even if nothing about the table has changed. Needed
+	 * if features managed by the table have been resized by something other than the table.
+	 */
+	public void invalidate() {
+		dirty = true;
 	}
 
 	@Override
 	/** 
 	 * Sets the bounding box for the UI Table. All cells in the table are resized and child UI Features have their bounding boxes
-	 * updated appropriately.	 * 
+	 * updated appropriately. Nothing is allocated. If only the position of the table has changed it's just translated, which still
+	 * moves every feature in the table and the tables nested in it. The layout is skipped entirely if nothing else has changed, and
+	 * only features whose cells have changed are laid out again.
 	 * @param x coordinate for the bottom left corner of the table.
 	 * @param y coordinate for the bottom left corner of the table.
 	 * @param width of the table in in-game units.
 	 * @param height of the table in in-game units.
 	 */
 	public void setBounds(float x, float y, float width, float height) {
-		bounds.set(x, y, width, height);	// Sets the size of the table's bounding box.
+		layout(x, y, width, height);	// The table and the tables nested in it are laid out,
+		getRoot().resolve();			// then everything moved along the way is put in place at once.
+	}
+	
+	// Lays out the table without moving the features of any tables which were only moved, leaving them for the next resolve.
+	void layout(float x, float y, float width, float height) {
+		if(bounds.x != x || bounds.y != y) shift(x - bounds.x, y - bounds.y);		// Cells are relative to the table, so moving
+																					// it doesn't change the layout.
+		if(!dirty && bounds.width == width && bounds.height == height				// If nothing used by the layout has changed
+				&& layoutBorderSize == borderSize && layoutPaddingSize == paddingSize	// since the last one, it's skipped.
+				&& layoutProportional == proportional) return;
+		
+		resolve();							// Features are moved to where the table is before any are laid out again.
+		bounds.setSize(width, height);		// Sets the size of the table's bounding box.
+		layoutBorderSize = borderSize;		// Records the sizing used for this layout.
+		layoutPaddingSize = paddingSize;
+		layoutProportional = proportional;
 		
 		float border;												// Variable to store the size of the border in in-game units.
 		if(proportional && borderSize > 0) {						// If the border is a percentage of the total size of the table
@@ -91,8 +141,10 @@ public class UITable implements UIFeature {
 		}
 		else border = borderSize;									// If not proportional then the exact value is used.
 		
-		Rectangle borderedBounds = new Rectangle(x + border, y + border,	// A new Rectangle is defined inside of the table
-				bounds.width - border * 2, bounds.height - border * 2);		// bounds which accounts for the border.
+		float innerX = border;							// The area inside of the table bounds which accounts for the
+		float innerY = border;							// border, relative to the table's bottom left corner.
+		float innerWidth = bounds.width - border * 2;
+		float innerHeight = bounds.height - border * 2;
 		
 		float padding;													// Variable to store the width of cell padding in in-game units.
 		if(proportional && paddingSize > 0) {							// If the padding is a percentage of the total size of the table
@@ -101,48 +153,60 @@ public class UITable implements UIFeature {
 		}
 		else padding = paddingSize;										// Otherwise padding size is set directly.
 		
-		cellBounds.clear();	// Clears the contents of the array holding bounding rectangles for all UI features before refilling it.
+		float maxCellHeight = innerHeight - padding * (cells.size + 1);	// Maximum height available for cells after padding
 		
-		float maxCellHeight = borderedBounds.height - padding * (cells.size + 1);	// Maximum height available for cells after padding
+		int c = 0;													// Index of the cell currently being laid out.
+		float cellY = innerY + innerHeight;
+		for(int row = 0; row < cells.size; row++) {					// For every row of cells in the table
+			float[] r = cells.get(row);
+			float cellHeight = maxCellHeight * r[0];				// the rows height is determined,
+			float cellX = innerX + padding;							// the cell is set against the left margin,
+			cellY -= cellHeight + padding;							// and the cells y is set.
+			float maxCellWidth = innerWidth - padding * (r.length);	// The amount of space available for cells is found.
 		
-		Rectangle cellRect = new Rectangle();	// Instantiates a blank rectangle to manipulate.
-		cellRect.y = borderedBounds.y + borderedBounds.height;
-		for(float[] r : cells) {												// For every row of cells in the table
-			cellRect.height = maxCellHeight * r[0];								// the rows height is determined,
-			cellRect.x = borderedBounds.x + padding;							// the blank rect is set against the left margin,
-			cellRect.y -= cellRect.height + padding;							// and the rects y is set.
-			float maxCellWidth = borderedBounds.width - padding * (r.length);	// The amount of space available for cells is found.
-			
-			for(int i = 1; i < r.length; i++) {				// For every cell present in the current row
-				cellRect.width = maxCellWidth * r[i];		// the width of the cell is determined,
-				Rectangle rect = new Rectangle(cellRect);	// and a new rectangle is constructed using the blank rect.
-				cellBounds.add(rect);						// The new rect is added to the array of cell bounding boxes.
-				cellRect.x += cellRect.width + padding;		// The blank rect is moved along to the position of the next cell.
+			for(int i = 1; i < r.length; i++, c++) {	// For every cell present in the current row
+				float cellWidth = maxCellWidth * r[i];	// the width of the cell is determined,
+				int k = c * 4;							// and it's compared to the cell's bounds from the last layout.
+				cellChanged[c] = cellBounds[k] != cellX || cellBounds[k + 1] != cellY
+						|| cellBounds[k + 2] != cellWidth || cellBounds[k + 3] != cellHeight;
+				cellBounds[k] = cellX;					// The cell's new bounds are stored.
+				cellBounds[k + 1] = cellY;
+				cellBounds[k + 2] = cellWidth;
+				cellBounds[k + 3] = cellHeight;
+				cellX += cellWidth + padding;			// The cell is moved along to the position of the next cell.
 			}
 		}
 		
 		for(int i = 0; i < features.size; i++) {					// For every UI feature managed by this table
-			if(i < cellBounds.size) cellRect = cellBounds.get(i);	// its newly created bounding box is accessed.
-			else break;												// If there are no bounding boxes left features cease to be updated.
+			if(i >= numCells) break;								// If there are no cells left features cease to be updated.
+			if(!dirty && !cellChanged[i]) continue;					// Features whose cell hasn't changed are left as they are.
+			
+			int k = i * 4;											// Its newly calculated bounding box is accessed.
+			float featureX = x + cellBounds[k], featureY = y + cellBounds[k + 1];
+			float featureWidth = cellBounds[k + 2], featureHeight = cellBounds[k + 3];
 			
 			if(features.get(i).getClass() == UITable.class) {	// If the feature being evaluated is a table itself
 				UITable t = (UITable) features.get(i);			// it is cast into a variable to be manipulated.
 				t.borderSize = 0;								// Sub-table borders are removed.
 				t.paddingSize = padding;						// Sub-tables use the same padding values as their parent,
 				t.proportional = false;							// and proportional padding is disabled.
-				cellRect.width += padding * 2;					// Padding around the new cell is also removed,
-				cellRect.height += padding * 2;					// Since it will be added when the sub-table sets its size.
-				cellRect.x -= padding;							// Cell is shifted appropriately on the x axis
-				cellRect.y -= padding;							// and the y axis.
+				featureWidth += padding * 2;					// Padding around the new cell is also removed,
+				featureHeight += padding * 2;					// Since it will be added when the sub-table sets its size.
+				featureX -= padding;							// Cell is shifted appropriately on the x axis
+				featureY -= padding;							// and the y axis.
 			}
 			
-			features.get(i).setBounds(cellRect.x, cellRect.y, cellRect.width, cellRect.height); // Sets size of corresponding UI feature.
+			UIFeature feature = features.get(i);				// Sets size of corresponding UI feature. Nested tables are
+			if(feature instanceof UITable) ((UITable) feature).layout(featureX, featureY, featureWidth, featureHeight);	// resolved
+			else feature.setBounds(featureX, featureY, featureWidth, featureHeight);	// along with this one.
 		}
+		dirty = false;
 	}
 
 	@Override
 	/**
-	 * Sets the position of the table, and moves all UIFeatures managed by the table appropriately.
+	 * Sets the position of the table, and moves all UIFeatures managed by the table appropriately. Every feature in the table and the
+	 * tables nested in it is moved before this returns, so each call costs time in proportion to the number of features moved.
 	 * @param x position of the tables bottom left corner on the x-axis.
 	 * @param y position of the tables bottom left corner on the y-axis.
 	 */
@@ -151,13 +215,62 @@ public class UITable implements UIFeature {
 	}
 	
 	/**
-	 * Shifts the table, and all of its managed UIFeatures, by the specified distance.
+	 * Shifts the table, and all of its managed UIFeatures, by the specified distance. Like {@link #setPosition(float, float)} every
+	 * feature in the table and the tables nested in it is moved before this returns. To move many tables each frame without moving
+	 * their features more than once, animate them with a {@link UIAnimator}.
 	 * @param x amount the table should be moved along the x-axis.
 	 * @param y amount the table should be moved along the y-axis.
 	 */
 	public void translate(float x, float y) {
-		for(UIFeature f : features) f.setPosition(f.getBounds().x + x, f.getBounds().x + y);	// All UIFeatures are moved.
-		bounds.setPosition(bounds.x + x, bounds.y + y);											// Then the tables position is updated.
+		shift(x, y);			// The table is moved,
+		getRoot().resolve();	// then its features, and those of any other table moved since the last resolve, follow it.
+	}
+	
+	// Moves the table's bounds straight away but leaves its features where they are until the outermost table is next resolved, so
+	// a table can be moved many times, along with the tables around it, while each feature is only moved once. Used by UIAnimator.
+	void shift(float x, float y) {
+		move(x, y);															// The table is moved,
+		for(UITable t = parent; t != null && !t.moved; t = t.parent) {		// and every table it's nested in is told so it can
+			t.moved = true;													// be found when the outermost table is resolved.
+		}
+	}
+	
+	/**
+	 * Moves every UIFeature managed by the table, and by the tables nested in it, to follow any translations made since they were last
+	 * positioned. However many times a table and the tables around it are moved, each feature is only moved once per resolve, and
+	 * tables which haven't moved are skipped, but a resolve still visits every feature of each table which has moved. Called
+	 * automatically whenever a table is moved or resized, so only needs calling directly after moves which were deferred, as the
+	 * {@link UIAnimator} does once per update.
+	 */
+	public void resolve() {
+		if(!moved) return;								// Nothing has to be done if nothing in the table has moved.
+		moved = false;
+		float x = offsetX, y = offsetY;					// The distance the table has moved is taken
+		offsetX = offsetY = 0;							// and cleared.
+		for(int i = 0; i < features.size; i++) {		// For every UI feature managed by this table
+			UIFeature f = features.get(i);
+			if(f instanceof UITable) {					// nested tables take on the distance moved
+				UITable t = (UITable) f;				// and are resolved in turn.
+				if(x != 0 || y != 0) t.move(x, y);
+				t.resolve();
+			}
+			else if(x != 0 || y != 0) f.setPosition(f.getBounds().x + x, f.getBounds().y + y);	// Other features are moved directly.
+		}
+	}
+	
+	// Gets the outermost table this table is nested in, or the table itself if it isn't nested.
+	UITable getRoot() {
+		UITable t = this;
+		while(t.parent != null) t = t.parent;
+		return t;
+	}
+	
+	// Moves the table's bounds straight away and records the distance for its features to be moved by when it's resolved.
+	private void move(float x, float y) {
+		bounds.setPosition(bounds.x + x, bounds.y + y);
+		offsetX += x;
+		offsetY += y;
+		moved = true;
 	}
 
 	@Override
@@ -170,8 +283,6 @@ public class UITable implements UIFeature {
 	 * @return Number of cells currently present in the table. Useful for quickly filling with features.
 	 */
 	public int getNumCells() {
-		int numCells = 0;
-		for(float[] row : cells) numCells += row.length - 1;
 		return numCells;
 	}
 }
@@ -0,0 +1,58 @@
+package com.badlogic.gdx.graphics.g2d.freetype;
+
+import static org.junit.Assert.assertEquals;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import org.junit.Test;
+
+import psyknz.libgdx.architecture.IncrementalFontData;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.Graphics;
+import com.badlogic.gdx.graphics.Pixmap.Format;
+import com.badlogic.gdx.graphics.g2d.BitmapFont.Glyph;
+import com.badlogic.gdx.graphics.g2d.PixmapPacker;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.graphics.g2d.freetype.FreeTypeFontGenerator.FreeTypeBitmapFontData;
+import com.badlogic.gdx.utils.Array;
+
+/** Lives in the FreeType package so it can fill the glyph list FreeType keeps, the same way rasterising glyphs does, without needing
+ * the native library.
+ * @author Alex Crowther */
+public class IncrementalFontDataTest {
+	
+	@Test
+	public void evictionKeepsGlyphCountBounded() {
+		Gdx.graphics = (Graphics) Proxy.newProxyInstance(Graphics.class.getClassLoader(), new Class<?>[] {Graphics.class},
+				new InvocationHandler() {
+					public Object invoke(Object proxy, Method method, Object[] args) {
+						return method.getReturnType() == long.class ? Long.valueOf(0) : null; // Only getFrameId is called.
+					}
+				});
+		IncrementalFontData data = new IncrementalFontData(null, new PixmapPacker(256, 256, Format.RGBA8888, 1, false), 1);
+		data.startRasterising(new Array<TextureRegion>());
+		((FreeTypeBitmapFontData) data).glyphs = new Array<Glyph>();
+		rasterise(data, ' ', 0);
+		
+		for(int cycle = 0; cycle < 100; cycle++) {
+			for(char c = 'a'; c <= 'z'; c++) rasterise(data, (char) (c + cycle % 2 * 32), 8);
+			assertEquals(27, data.getGlyphCount());
+			data.evict();
+			assertEquals(1, data.getGlyphCount()); // Only the space, which has no image, survives an eviction.
+		}
+		assertEquals(100, data.getEvictions());
+	}
+	
+	// Adds a glyph to the font as FreeType does when it rasterises one.
+	private static void rasterise(IncrementalFontData data, char c, int size) {
+		Glyph glyph = new Glyph();
+		glyph.id = c;
+		glyph.width = size;
+		glyph.height = size;
+		data.setGlyph(c, glyph);
+		((FreeTypeBitmapFontData) data).glyphs.add(glyph); // Package private fields can't be reached through the subclass.
+	}
+}
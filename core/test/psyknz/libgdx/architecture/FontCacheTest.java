@@ -0,0 +1,71 @@
+package psyknz.libgdx.architecture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.g2d.freetype.FreeTypeFontGenerator.FreeTypeFontParameter;
+import com.badlogic.gdx.graphics.g2d.freetype.FreeTypeFontGenerator.Hinting;
+
+/** @author Alex Crowther */
+public class FontCacheTest {
+	
+	@Test
+	public void borderAndColourChangeTheKey() throws IOException {
+		FontCache cache = new FontCache(null);
+		FileHandle font = fontFile();
+		FreeTypeFontParameter plain = new FreeTypeFontParameter();
+		FreeTypeFontParameter bordered = new FreeTypeFontParameter();
+		bordered.borderWidth = 2;
+		bordered.borderColor = Color.RED;
+		FreeTypeFontParameter coloured = new FreeTypeFontParameter();
+		coloured.color = Color.YELLOW;
+		
+		assertEquals(cache.getKey(font, plain), cache.getKey(font, new FreeTypeFontParameter()));
+		assertFalse(cache.getKey(font, plain).equals(cache.getKey(font, bordered)));
+		assertFalse(cache.getKey(font, plain).equals(cache.getKey(font, coloured)));
+		assertFalse(cache.getKey(font, bordered).equals(cache.getKey(font, coloured)));
+	}
+	
+	@Test
+	public void everyGlyphParameterChangesTheKey() throws IOException {
+		FontCache cache = new FontCache(null);
+		FileHandle font = fontFile();
+		String key = cache.getKey(font, new FreeTypeFontParameter());
+		FreeTypeFontParameter[] changed = new FreeTypeFontParameter[17];
+		for(int i = 0; i < changed.length; i++) changed[i] = new FreeTypeFontParameter();
+		changed[0].mono = true;
+		changed[1].hinting = Hinting.None;
+		changed[2].gamma = 2.2f;
+		changed[3].renderCount = 1;
+		changed[4].borderStraight = true;
+		changed[5].borderGamma = 2.2f;
+		changed[6].shadowOffsetX = 1;
+		changed[7].shadowOffsetY = 1;
+		changed[8].shadowColor = Color.BLUE;
+		changed[9].spaceX = 1;
+		changed[10].spaceY = 1;
+		changed[11].padTop = 1;
+		changed[12].padLeft = 1;
+		changed[13].padBottom = 1;
+		changed[14].padRight = 1;
+		changed[15].kerning = false;
+		changed[16].borderColor = Color.GREEN;
+		for(int i = 0; i < changed.length; i++) assertFalse("parameter " + i, key.equals(cache.getKey(font, changed[i])));
+	}
+	
+	// Keys only depend on the font file's contents, so any bytes will do.
+	private static FileHandle fontFile() throws IOException {
+		File file = File.createTempFile("font", ".ttf");
+		file.deleteOnExit();
+		FileHandle handle = new FileHandle(file);
+		handle.writeString("not really a font", false);
+		return handle;
+	}
+}
@@ -0,0 +1,103 @@
+package psyknz.libgdx.architecture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import org.junit.Test;
+
+import com.badlogic.gdx.Application;
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.Graphics;
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.g2d.BitmapFont;
+import com.badlogic.gdx.graphics.g2d.BitmapFont.Glyph;
+import com.badlogic.gdx.graphics.g2d.GlyphLayout;
+import com.badlogic.gdx.utils.GdxNativesLoader;
+
+/** Generates fonts with the real FreeType natives, against a GL which only checks it is called from the rendering thread.
+ * @author Alex Crowther */
+public class FreeTypeFontLoaderTest {
+	
+	private static final String FONT = "/usr/share/fonts/truetype/dejavu/DejaVuSans.ttf"; // Any .ttf file with latin glyphs. Skipped if missing.
+	
+	private volatile Thread renderThread;	// Thread GL calls are allowed on.
+	private volatile String offThreadCall;	// First GL call made on any other thread.
+	
+	@Test
+	public void incrementalFontLoadsWithoutSpace() throws InterruptedException {
+		final FileHandle file = new FileHandle(FONT);
+		assumeTrue(file.exists());
+		mockGraphics();
+		final FreeTypeFontLoader loader = new FreeTypeFontLoader(null);
+		final FreeTypeFontLoader.FreeTypeFontParameter parameter = new FreeTypeFontLoader.FreeTypeFontParameter();
+		parameter.incremental = true;
+		parameter.characters = "ABC"; // Only a few glyphs up front, and no space.
+		
+		// The AssetManager calls loadAsync on its executor thread.
+		final RuntimeException[] failure = new RuntimeException[1];
+		Thread thread = new Thread() {
+			@Override
+			public void run() {
+				try {
+					loader.loadAsync(null, "font.ttf", file, parameter);
+				}
+				catch(RuntimeException e) {
+					failure[0] = e;
+				}
+			}
+		};
+		thread.start();
+		thread.join();
+		if(failure[0] != null) throw failure[0];
+		
+		BitmapFont font = loader.loadSync(null, "font.ttf", file, parameter);
+		Glyph space = font.getData().getGlyph(' ');
+		assertNotNull(space);
+		assertTrue(space.xadvance > 0);
+		
+		GlyphLayout layout = new GlyphLayout(font, "hello world"); // Rasterised now, on the rendering thread.
+		assertTrue(layout.width > 0);
+		assertNotNull(font.getData().getGlyph('h'));
+		assertNull(offThreadCall, offThreadCall);
+		assertEquals(1, font.getRegions().size);
+		font.dispose();
+		loader.dispose();
+	}
+	
+	// Stands in for the graphics backend, recording GL calls made anywhere but the current thread.
+	private void mockGraphics() {
+		GdxNativesLoader.load();
+		renderThread = Thread.currentThread();
+		Gdx.gl = Gdx.gl20 = mock(GL20.class);
+		Gdx.graphics = mock(Graphics.class);
+		Gdx.app = mock(Application.class);
+	}
+	
+	@SuppressWarnings("unchecked")
+	private <T> T mock(final Class<T> type) {
+		return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, new InvocationHandler() {
+			private int handles; // Handles given out by glGen calls.
+			
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				if(type == GL20.class && Thread.currentThread() != renderThread && offThreadCall == null) {
+					offThreadCall = method.getName() + " called off the rendering thread";
+				}
+				Class<?> result = method.getReturnType();
+				if(result == int.class) return Integer.valueOf(++handles);
+				if(result == long.class) return Long.valueOf(0);
+				if(result == float.class) return Float.valueOf(0);
+				if(result == boolean.class) return Boolean.FALSE;
+				if(result == Application.ApplicationType.class) return Application.ApplicationType.HeadlessDesktop;
+				return null;
+			}
+		});
+	}
+}